@@ -0,0 +1,115 @@
+package com.microsoft.migration.assets.worker.service;
+
+import javax.imageio.ImageIO;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Random;
+
+/**
+ * Synthetic benchmark corpus. Images mix smooth gradients, hard edges and per-pixel noise
+ * so that both the resampler and the encoders see photo-like and graphic-like content,
+ * and are generated from a fixed seed so every run measures the same pixels.
+ */
+final class BenchmarkImages {
+    private static final long SEED = 0x5EED;
+
+    private BenchmarkImages() {
+    }
+
+    /**
+     * Parse a corpus entry of the form {@code format:WIDTHxHEIGHT}, where format is jpg, png
+     * or png-alpha, and return the encoded original.
+     */
+    static byte[] original(String spec) {
+        String format = spec.substring(0, spec.indexOf(':'));
+        String[] size = spec.substring(spec.indexOf(':') + 1).split("x");
+        boolean alpha = format.endsWith("-alpha");
+        BufferedImage image = create(Integer.parseInt(size[0]), Integer.parseInt(size[1]), alpha);
+        return encode(image, alpha ? "png" : format);
+    }
+
+    /**
+     * Extension of the original described by a corpus entry, as the worker derives it from the key.
+     */
+    static String extension(String spec) {
+        return spec.startsWith("jpg") ? ".jpg" : ".png";
+    }
+
+    static BufferedImage create(int width, int height, boolean alpha) {
+        BufferedImage image = new BufferedImage(width, height,
+            alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(SEED);
+
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setPaint(new GradientPaint(0, 0, new Color(32, 96, 160), width, height, new Color(230, 190, 80)));
+            g.fillRect(0, 0, width, height);
+
+            // Shapes with hard and anti-aliased edges, some translucent
+            for (int i = 0; i < 60; i++) {
+                g.setColor(new Color(random.nextInt(256), random.nextInt(256), random.nextInt(256),
+                    alpha ? 64 + random.nextInt(192) : 255));
+                int x = random.nextInt(width);
+                int y = random.nextInt(height);
+                int w = 1 + random.nextInt(Math.max(width / 4, 1));
+                int h = 1 + random.nextInt(Math.max(height / 4, 1));
+                if (i % 3 == 0) {
+                    g.fillOval(x, y, w, h);
+                } else if (i % 3 == 1) {
+                    g.fillRect(x, y, w, h);
+                } else {
+                    g.setStroke(new BasicStroke(1 + random.nextInt(6)));
+                    g.drawLine(x, y, random.nextInt(width), random.nextInt(height));
+                }
+            }
+        } finally {
+            g.dispose();
+        }
+
+        // Sensor-like noise, and a transparent border fading in for the alpha variants
+        int border = Math.max(Math.min(width, height) / 10, 1);
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int x = 0; x < width; x++) {
+                int noise = random.nextInt(17) - 8;
+                int argb = row[x];
+                int a = argb >>> 24;
+                if (alpha) {
+                    int edge = Math.min(Math.min(x, width - 1 - x), Math.min(y, height - 1 - y));
+                    a = Math.min(a, 255 * Math.min(edge, border) / border);
+                }
+                row[x] = a << 24
+                    | clamp((argb >> 16 & 0xff) + noise) << 16
+                    | clamp((argb >> 8 & 0xff) + noise) << 8
+                    | clamp((argb & 0xff) + noise);
+            }
+            image.setRGB(0, y, width, 1, row, 0, width);
+        }
+        return image;
+    }
+
+    static byte[] encode(BufferedImage image, String format) {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            if (!ImageIO.write(image, format, out)) {
+                throw new IllegalArgumentException("No image writer available for format: " + format);
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int clamp(int value) {
+        return Math.min(Math.max(value, 0), 255);
+    }
+}
@@ -0,0 +1,64 @@
+package com.microsoft.migration.assets.worker.service;
+
+import com.microsoft.migration.assets.worker.model.ImageMetadata;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Processing service without storage, so benchmarks can drive the image code of
+ * {@link AbstractFileProcessingService} directly without a Spring context. Storage calls do
+ * nothing: originals are empty, thumbnails are discarded and none are found for reuse.
+ */
+class BenchmarkProcessingService extends AbstractFileProcessingService {
+
+    BenchmarkProcessingService(String resampler, float sharpen) {
+        useResampler(resampler, sharpen);
+        useMeterRegistry(new SimpleMeterRegistry());
+    }
+
+    @Override
+    public InputStream openOriginal(String key) {
+        return InputStream.nullInputStream();
+    }
+
+    @Override
+    public void downloadOriginal(String key, Path destination) {
+    }
+
+    @Override
+    public void uploadThumbnail(byte[] content, int length, String key, String contentType) {
+    }
+
+    @Override
+    public void copyThumbnail(String sourceKey, String targetKey) {
+    }
+
+    @Override
+    public void recordThumbnails(String thumbnailKey, Map<Integer, String> renditionKeys, String contentHash,
+                                 String thumbnailSettings) {
+    }
+
+    @Override
+    public Optional<ImageMetadata> findThumbnails(String key) {
+        return Optional.empty();
+    }
+
+    @Override
+    public Optional<ImageMetadata> findThumbnailsByContent(String contentHash, String thumbnailSettings) {
+        return Optional.empty();
+    }
+
+    @Override
+    public String getStorageType() {
+        return "benchmark";
+    }
+
+    @Override
+    protected String generateUrl(String key) {
+        return key;
+    }
+}
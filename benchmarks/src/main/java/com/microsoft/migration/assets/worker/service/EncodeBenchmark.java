@@ -0,0 +1,74 @@
+package com.microsoft.migration.assets.worker.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding a single thumbnail with the settings the worker uses by default
+ * (JPEG quality 0.85, PNG deflate level 6, lossy WebP quality 0.8).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class EncodeBenchmark {
+
+    @Param({"jpg", "png", "webp"})
+    private String format;
+
+    @Param({"false", "true"})
+    private boolean alpha;
+
+    @Param({"600x400"})
+    private String size;
+
+    private BufferedImage thumbnail;
+    private ThumbnailEncoder encoder;
+    private ByteArrayOutputStream buffer;
+
+    static ThumbnailEncoder encoder(String format) {
+        return switch (format) {
+            case "jpg" -> new ThumbnailEncoder("jpeg", "image/jpeg", ".jpg", null, 0.85f);
+            case "png" -> new ThumbnailEncoder("png", "image/png", ".png", "Deflate", 1.0f - 6 / 9.0f);
+            case "webp" -> new ThumbnailEncoder("webp", "image/webp", ".webp", "Lossy", 0.8f);
+            default -> throw new IllegalArgumentException("Unknown format: " + format);
+        };
+    }
+
+    @Setup
+    public void setUp() {
+        String[] dimensions = size.split("x");
+        encoder = encoder(format);
+        // The JPEG writer rejects alpha; the worker only encodes alpha thumbnails from PNG originals
+        thumbnail = BenchmarkImages.create(Integer.parseInt(dimensions[0]), Integer.parseInt(dimensions[1]),
+            alpha && !"jpg".equals(format));
+        buffer = new ByteArrayOutputStream(256 * 1024);
+    }
+
+    @Benchmark
+    public int encode() throws IOException {
+        buffer.reset();
+        try (ImageOutputStream output = new MemoryCacheImageOutputStream(buffer)) {
+            encoder.encode(thumbnail, output);
+        }
+        return buffer.size();
+    }
+}
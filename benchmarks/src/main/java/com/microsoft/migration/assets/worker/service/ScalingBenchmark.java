@@ -0,0 +1,83 @@
+package com.microsoft.migration.assets.worker.service;
+
+import com.microsoft.migration.assets.worker.util.Resampler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The resize and sharpen steps in isolation, on an already decoded raster of the size
+ * {@code readSubsampled} typically hands over (about twice the largest rendition).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ScalingBenchmark {
+
+    @Param({"2400x1600", "6000x4000"})
+    private String source;
+
+    @Param({"false", "true"})
+    private boolean alpha;
+
+    @Param({"600"})
+    private int size;
+
+    private BufferedImage image;
+    private BufferedImage thumbnail;
+    private BufferedImage resampled;
+    private Dimension target;
+    private BenchmarkProcessingService service;
+
+    @Setup
+    public void setUp() {
+        String[] dimensions = source.split("x");
+        image = BenchmarkImages.create(Integer.parseInt(dimensions[0]), Integer.parseInt(dimensions[1]), alpha);
+        service = new BenchmarkProcessingService("legacy", 0f);
+        target = service.fitDimensions(image.getWidth(), image.getHeight(), size);
+        thumbnail = service.progressiveScaling(image, target.width, target.height);
+        resampled = Resampler.resize(image, target.width, target.height, Resampler.Filter.MITCHELL, 0f);
+    }
+
+    @Benchmark
+    public BufferedImage progressiveScaling() {
+        return service.progressiveScaling(image, target.width, target.height);
+    }
+
+    @Benchmark
+    public BufferedImage sharpenImage() {
+        return service.sharpenImage(thumbnail);
+    }
+
+    @Benchmark
+    public BufferedImage resampleSharpen() {
+        // In place; repeated passes only saturate the pixels, which costs the same
+        Resampler.sharpen(resampled, 0.15f);
+        return resampled;
+    }
+
+    @Benchmark
+    public BufferedImage resampleMitchell() {
+        return Resampler.resize(image, target.width, target.height, Resampler.Filter.MITCHELL, 0.15f);
+    }
+
+    @Benchmark
+    public BufferedImage resampleLanczos3() {
+        return Resampler.resize(image, target.width, target.height, Resampler.Filter.LANCZOS3, 0.15f);
+    }
+}
@@ -0,0 +1,86 @@
+package com.microsoft.migration.assets.worker.service;
+
+import com.microsoft.migration.assets.worker.util.ByteArrayImageInputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.imageio.stream.ImageInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end thumbnail generation as the CPU stage runs it: decode the original once and
+ * encode every rendition in the original's format. Storage and messaging are not included.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ThumbnailBenchmark {
+
+    @Param({"jpg:640x480", "jpg:3000x2000", "jpg:6000x4000", "png:1200x800", "png-alpha:1200x800", "png-alpha:3000x2000"})
+    private String image;
+
+    @Param({"legacy", "mitchell", "lanczos3"})
+    private String resampler;
+
+    @Param({"150,300,600,1200"})
+    private String renditions;
+
+    private byte[] original;
+    private List<Integer> sizes;
+    private List<ThumbnailEncoder> encoders;
+    private BenchmarkProcessingService service;
+
+    @Setup
+    public void setUp() {
+        original = BenchmarkImages.original(image);
+        sizes = List.of(renditions.split(",")).stream().map(String::trim).map(Integer::valueOf).toList();
+        encoders = List.of(EncodeBenchmark.encoder(BenchmarkImages.extension(image).substring(1)));
+        service = new BenchmarkProcessingService(resampler, 0.15f);
+    }
+
+    @Benchmark
+    public void generateThumbnails(Blackhole blackhole) throws IOException {
+        OutputStream sink = new BlackholeOutputStream(blackhole);
+        try (ImageInputStream input = new ByteArrayImageInputStream(original, 0, original.length)) {
+            service.generateThumbnails(input, sizes, encoders, (size, encoder) -> sink);
+        }
+    }
+
+    /**
+     * Discards the encoded bytes while keeping the writes observable to the JIT.
+     */
+    static class BlackholeOutputStream extends OutputStream {
+        private final Blackhole blackhole;
+
+        BlackholeOutputStream(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void write(int b) {
+            blackhole.consume(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            blackhole.consume(b);
+            blackhole.consume(len);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.microsoft.migration.assets.loadtest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * One of the applications under test, run from its executable jar in a child JVM so that
+ * it starts and behaves exactly as deployed. Output goes to a log file next to the report.
+ */
+class AppProcess implements AutoCloseable {
+    private static final Pattern STARTED = Pattern.compile("Started \\w+ in ");
+
+    private final String name;
+    private final Path log;
+    private final Process process;
+
+    AppProcess(String name, Path jar, List<String> jvmArgs, List<String> appArgs, Path logDir) throws IOException {
+        if (!Files.isRegularFile(jar)) {
+            throw new IllegalArgumentException("Application jar not found: " + jar.toAbsolutePath()
+                    + " (build it first with: ./mvnw -DskipTests package)");
+        }
+        this.name = name;
+        this.log = logDir.resolve(name + ".log");
+
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmArgs);
+        command.add("-jar");
+        command.add(jar.toAbsolutePath().toString());
+        command.addAll(appArgs);
+        this.process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile())
+                .start();
+    }
+
+    /**
+     * Wait until Spring Boot logs that the application has started.
+     */
+    void awaitStarted(Duration timeout) throws IOException, InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (System.nanoTime() < deadline) {
+            if (!process.isAlive()) {
+                throw new IllegalStateException(name + " exited with code " + process.exitValue() + ", see " + log);
+            }
+            if (Files.exists(log) && STARTED.matcher(Files.readString(log)).find()) {
+                return;
+            }
+            Thread.sleep(250);
+        }
+        throw new IllegalStateException(name + " did not start within " + timeout + ", see " + log);
+    }
+
+    String name() {
+        return name;
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        process.destroy();
+        if (!process.waitFor(30, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.microsoft.migration.assets.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntPredicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Open-loop load against the web app: uploads, listing page loads and thumbnail views are each
+ * issued at a fixed rate regardless of how fast earlier requests complete, so a saturated system
+ * shows up as growing latency and backlog rather than as a quietly reduced offered load.
+ * Upload-to-thumbnail latency is measured from the start of the upload request to the worker's
+ * thumbnail completion event; only uploads started in the measurement window are counted.
+ */
+class LoadDriver {
+    private static final Pattern UPLOAD_FILENAME = Pattern.compile("loadtest-(\\d+)\\.\\w+$");
+    private static final int RECENT_THUMBNAILS = 1024;
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private record Upload(long startNanos, boolean measured) {
+    }
+
+    private final LoadTest.Options options;
+    private final URI web;
+    private final List<byte[]> images;
+    private final HttpClient client;
+    private final ExecutorService requestExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<Long, Upload> pending = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<String> recentThumbnails = new AtomicReferenceArray<>(RECENT_THUMBNAILS);
+    private final AtomicLong thumbnailCount = new AtomicLong();
+
+    private final Histogram uploadLatency = new ConcurrentHistogram(3);
+    private final Histogram thumbnailLatency = new ConcurrentHistogram(3);
+    private final Histogram listLatency = new ConcurrentHistogram(3);
+    private final Histogram viewLatency = new ConcurrentHistogram(3);
+    private final LongAdder uploadsSent = new LongAdder();
+    private final LongAdder uploadFailures = new LongAdder();
+    private final LongAdder listFailures = new LongAdder();
+    private final LongAdder viewFailures = new LongAdder();
+    private final LongAdder measuredCompletions = new LongAdder();
+
+    private volatile long measureStart = Long.MAX_VALUE;
+    private volatile long measureEnd = Long.MAX_VALUE;
+
+    LoadDriver(LoadTest.Options options, URI web, List<byte[]> images) {
+        this.options = options;
+        this.web = web;
+        this.images = images;
+        this.client = HttpClient.newBuilder()
+                .executor(requestExecutor)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+    }
+
+    /**
+     * Called for every thumbnail completion event published by the workers.
+     */
+    void onThumbnailCompleted(String key, String thumbnailKey) {
+        long now = System.nanoTime();
+        Matcher matcher = UPLOAD_FILENAME.matcher(key);
+        Upload upload = matcher.find() ? pending.remove(Long.parseLong(matcher.group(1))) : null;
+        if (upload == null) {
+            return; // not ours, or a redelivery
+        }
+
+        recentThumbnails.set((int) (thumbnailCount.getAndIncrement() % RECENT_THUMBNAILS), thumbnailKey);
+        if (upload.measured()) {
+            thumbnailLatency.recordValue(TimeUnit.NANOSECONDS.toMicros(now - upload.startNanos()));
+        }
+        if (now >= measureStart && now < measureEnd) {
+            measuredCompletions.increment();
+        }
+    }
+
+    /**
+     * Apply the load for the warm-up and measurement periods, then wait for outstanding thumbnails.
+     */
+    void run(PrintStream out) throws InterruptedException {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        long start = System.nanoTime();
+        measureStart = start + options.warmup().toNanos();
+        measureEnd = measureStart + options.duration().toNanos();
+        try {
+            schedule(scheduler, options.uploadRate(), this::upload);
+            schedule(scheduler, options.listRate(), this::list);
+            schedule(scheduler, options.viewRate(), this::view);
+
+            while (System.nanoTime() < measureEnd) {
+                Thread.sleep(Math.min(options.progressInterval().toMillis(),
+                        Math.max(TimeUnit.NANOSECONDS.toMillis(measureEnd - System.nanoTime()), 1)));
+                progress(out, start, System.nanoTime() < measureStart ? "warm-up" : "measuring");
+            }
+        } finally {
+            scheduler.shutdownNow();
+        }
+
+        long drainDeadline = System.nanoTime() + options.drain().toNanos();
+        long nextProgress = System.nanoTime();
+        while (!pending.isEmpty() && System.nanoTime() < drainDeadline) {
+            Thread.sleep(100);
+            if (System.nanoTime() >= nextProgress) {
+                progress(out, start, "draining");
+                nextProgress += options.progressInterval().toNanos();
+            }
+        }
+        requestExecutor.shutdownNow();
+    }
+
+    void report(PrintStream out, Map<String, Long> s3Requests) {
+        double seconds = options.duration().toMillis() / 1000.0;
+        long measuredUploads = thumbnailLatency.getTotalCount() + pending.values().stream().filter(Upload::measured).count();
+
+        out.println();
+        out.printf("Measured %ds after %ds warm-up with %d worker(s)%n",
+                options.duration().toSeconds(), options.warmup().toSeconds(), options.workers());
+        out.printf("Offered load   %.2f uploads/s, %.2f lists/s, %.2f views/s%n",
+                options.uploadRate(), options.listRate(), options.viewRate());
+        out.printf("Uploads        %d sent, %d failed, %d still pending%n", uploadsSent.sum(), uploadFailures.sum(), pending.size());
+        out.printf("Throughput     %.2f images/s sustained (thumbnails completed in the measurement window)%n",
+                measuredCompletions.sum() / seconds);
+        out.printf("Completed      %d of %d uploads started in the measurement window%n",
+                thumbnailLatency.getTotalCount(), measuredUploads);
+        out.println();
+        out.printf("%-22s %8s %9s %9s %9s %9s %9s%n", "Latency (ms)", "count", "p50", "p90", "p99", "p99.9", "max");
+        row(out, "upload request", uploadLatency);
+        row(out, "upload to thumbnail", thumbnailLatency);
+        row(out, "list page", listLatency);
+        row(out, "thumbnail view", viewLatency);
+        out.printf("Failures       lists %d, views %d%n", listFailures.sum(), viewFailures.sum());
+        out.println();
+        out.println("S3 requests    " + new TreeMap<>(s3Requests));
+    }
+
+    private void schedule(ScheduledExecutorService scheduler, double rate, Runnable request) {
+        if (rate > 0) {
+            long period = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+            scheduler.scheduleAtFixedRate(() -> requestExecutor.execute(request), 0, Math.max(period, 1), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void upload() {
+        long seq = sequence.incrementAndGet();
+        String filename = "loadtest-" + seq + "." + options.imageFormat();
+        byte[] image = images.get((int) (seq % images.size()));
+        String contentType = "image/" + ("jpg".equals(options.imageFormat()) ? "jpeg" : options.imageFormat());
+
+        HttpRequest request;
+        if ("form".equals(options.uploadMode())) {
+            String boundary = "loadtest-" + Long.toHexString(ThreadLocalRandom.current().nextLong());
+            byte[] head = ("--" + boundary + "\r\nContent-Disposition: form-data; name=\"file\"; filename=\"" + filename
+                    + "\"\r\nContent-Type: " + contentType + "\r\n\r\n").getBytes(StandardCharsets.UTF_8);
+            byte[] tail = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8);
+            request = HttpRequest.newBuilder(web.resolve("/s3/upload"))
+                    .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                    .POST(HttpRequest.BodyPublishers.ofByteArrays(List.of(head, image, tail)))
+                    .build();
+        } else {
+            request = HttpRequest.newBuilder(web.resolve("/s3/upload/stream?filename="
+                            + URLEncoder.encode(filename, StandardCharsets.UTF_8)))
+                    .header("Content-Type", contentType)
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(image))
+                    .build();
+        }
+
+        long start = System.nanoTime();
+        pending.put(seq, new Upload(start, start >= measureStart && start < measureEnd));
+        uploadsSent.increment();
+        // The form upload redirects back to the listing, also on failure; its errors only show as missing thumbnails
+        boolean ok = send(request, uploadLatency, start, status -> status == 200 || status == 302);
+        if (!ok) {
+            uploadFailures.increment();
+            pending.remove(seq);
+        }
+    }
+
+    private void list() {
+        HttpRequest request = HttpRequest.newBuilder(web.resolve("/s3")).GET().build();
+        if (!send(request, listLatency, System.nanoTime(), status -> status == 200)) {
+            listFailures.increment();
+        }
+    }
+
+    private void view() {
+        long count = thumbnailCount.get();
+        if (count == 0) {
+            return; // nothing to view yet
+        }
+        String thumbnailKey = recentThumbnails.get(ThreadLocalRandom.current().nextInt((int) Math.min(count, RECENT_THUMBNAILS)));
+        HttpRequest request = HttpRequest.newBuilder(web.resolve("/s3/view/" + URLEncoder.encode(thumbnailKey, StandardCharsets.UTF_8)))
+                .header("Accept", "image/webp,image/*;q=0.8")
+                .GET()
+                .build();
+        if (!send(request, viewLatency, System.nanoTime(), status -> status == 200 || status == 302)) {
+            viewFailures.increment();
+        }
+    }
+
+    private boolean send(HttpRequest request, Histogram latency, long start, IntPredicate success) {
+        try {
+            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+            long now = System.nanoTime();
+            if (start >= measureStart && start < measureEnd) {
+                latency.recordValue(TimeUnit.NANOSECONDS.toMicros(now - start));
+            }
+            return success.test(response.statusCode());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private void progress(PrintStream out, long start, String phase) {
+        out.printf("[%4ds] %-9s uploads %d (%d failed), thumbnails %d, pending %d%n",
+                TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start), phase,
+                uploadsSent.sum(), uploadFailures.sum(), thumbnailCount.get(), pending.size());
+    }
+
+    private static void row(PrintStream out, String name, Histogram histogram) {
+        StringBuilder line = new StringBuilder(String.format("%-22s %8d", name, histogram.getTotalCount()));
+        if (histogram.getTotalCount() > 0) {
+            for (double percentile : PERCENTILES) {
+                line.append(String.format(" %9.1f", histogram.getValueAtPercentile(percentile) / 1000.0));
+            }
+            line.append(String.format(" %9.1f", histogram.getMaxValue() / 1000.0));
+        }
+        out.println(line);
+    }
+}
@@ -0,0 +1,284 @@
+package com.microsoft.migration.assets.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * End-to-end load test of the web app and the worker fleet without AWS or Docker.
+ * <p>
+ * Starts PostgreSQL (embedded binaries), an AMQP broker and an S3 stand-in in this JVM, launches the
+ * web app and the requested number of workers from their executable jars against them, drives
+ * uploads, listing and views at the configured rates and reports upload-to-thumbnail latency
+ * percentiles and the sustained images/sec. Run with {@code --help} for the options.
+ */
+public class LoadTest {
+    private static final String IMAGE_EVENTS_EXCHANGE = "image-events";
+    private static final String BUCKET = "loadtest";
+    private static final int DISTINCT_IMAGES = 16;
+
+    /**
+     * Command line options, given as {@code --name=value}.
+     */
+    record Options(Path webJar, Path workerJar, int workers, double uploadRate, double listRate, double viewRate,
+                   Duration warmup, Duration duration, Duration drain, Duration progressInterval,
+                   String imageFormat, int imageWidth, int imageHeight, String uploadMode, Duration s3Latency,
+                   List<String> webJvmArgs, List<String> workerJvmArgs, List<String> webArgs, List<String> workerArgs,
+                   Path workDir) {
+
+        static final String USAGE = """
+                Usage: java -jar loadtest/target/loadtest.jar [--name=value ...]
+
+                  --workers=1                  worker processes to start
+                  --upload-rate=5              uploads per second (open loop)
+                  --list-rate=1                listing page loads per second
+                  --view-rate=5                thumbnail views per second
+                  --warmup=10s                 load before measuring starts
+                  --duration=60s               measurement window
+                  --drain=60s                  max wait for outstanding thumbnails afterwards
+                  --progress-interval=5s       how often progress is printed
+                  --image-size=1920x1080       dimensions of the uploaded images
+                  --image-format=jpg           jpg or png
+                  --upload-mode=stream         stream (POST /s3/upload/stream) or form (multipart POST /s3/upload)
+                  --s3-latency=0ms             delay added to every S3 request, to approximate the real service
+                  --web-jvm-args=-Xmx1g        JVM options of the web app (space separated)
+                  --worker-jvm-args=-Xmx1g     JVM options of each worker
+                  --web-args= --worker-args=   extra Spring Boot arguments, e.g. --worker-args=--worker.pipeline.max-in-flight=64
+                  --web-jar=web/target/assets-manager-web-0.0.1-SNAPSHOT.jar
+                  --worker-jar=worker/target/assets-manager-worker-0.0.1-SNAPSHOT-exec.jar
+                  --work-dir=loadtest/target/run  app logs, database files and the report
+                """;
+
+        static Options parse(String[] args) {
+            Map<String, String> values = new HashMap<>();
+            for (String arg : args) {
+                if (!arg.startsWith("--")) {
+                    throw new IllegalArgumentException("Unexpected argument: " + arg);
+                }
+                int equals = arg.indexOf('=');
+                values.put(equals < 0 ? arg.substring(2) : arg.substring(2, equals), equals < 0 ? "true" : arg.substring(equals + 1));
+            }
+
+            String[] imageSize = values.getOrDefault("image-size", "1920x1080").split("x");
+            return new Options(
+                    Path.of(values.getOrDefault("web-jar", "web/target/assets-manager-web-0.0.1-SNAPSHOT.jar")),
+                    Path.of(values.getOrDefault("worker-jar", "worker/target/assets-manager-worker-0.0.1-SNAPSHOT-exec.jar")),
+                    Integer.parseInt(values.getOrDefault("workers", "1")),
+                    Double.parseDouble(values.getOrDefault("upload-rate", "5")),
+                    Double.parseDouble(values.getOrDefault("list-rate", "1")),
+                    Double.parseDouble(values.getOrDefault("view-rate", "5")),
+                    duration(values.getOrDefault("warmup", "10s")),
+                    duration(values.getOrDefault("duration", "60s")),
+                    duration(values.getOrDefault("drain", "60s")),
+                    duration(values.getOrDefault("progress-interval", "5s")),
+                    values.getOrDefault("image-format", "jpg"),
+                    Integer.parseInt(imageSize[0]),
+                    Integer.parseInt(imageSize[1]),
+                    values.getOrDefault("upload-mode", "stream"),
+                    duration(values.getOrDefault("s3-latency", "0ms")),
+                    split(values.getOrDefault("web-jvm-args", "-Xmx1g")),
+                    split(values.getOrDefault("worker-jvm-args", "-Xmx1g")),
+                    split(values.getOrDefault("web-args", "")),
+                    split(values.getOrDefault("worker-args", "")),
+                    Path.of(values.getOrDefault("work-dir", "loadtest/target/run")));
+        }
+
+        private static Duration duration(String value) {
+            if (value.endsWith("ms")) {
+                return Duration.ofMillis(Long.parseLong(value.substring(0, value.length() - 2)));
+            }
+            long amount = Long.parseLong(value.substring(0, value.length() - 1));
+            return switch (value.charAt(value.length() - 1)) {
+                case 's' -> Duration.ofSeconds(amount);
+                case 'm' -> Duration.ofMinutes(amount);
+                case 'h' -> Duration.ofHours(amount);
+                default -> throw new IllegalArgumentException("Invalid duration (use ms, s, m or h): " + value);
+            };
+        }
+
+        private static List<String> split(String value) {
+            return value.isBlank() ? List.of() : Arrays.asList(value.trim().split("\\s+"));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (Arrays.asList(args).contains("--help")) {
+            System.out.print(Options.USAGE);
+            return;
+        }
+        Options options = Options.parse(args);
+        Files.createDirectories(options.workDir());
+        System.setProperty("java.awt.headless", "true");
+
+        System.out.printf("Generating %d %dx%d %s images%n", DISTINCT_IMAGES, options.imageWidth(), options.imageHeight(), options.imageFormat());
+        List<byte[]> images = SyntheticImages.create(options.imageWidth(), options.imageHeight(), options.imageFormat(), DISTINCT_IMAGES);
+
+        List<AppProcess> apps = new ArrayList<>();
+        try (EmbeddedPostgres postgres = EmbeddedPostgres.builder()
+                     .setDataDirectory(options.workDir().resolve("postgres"))
+                     .setCleanDataDirectory(true)
+                     .start();
+             EmbeddedBroker broker = new EmbeddedBroker(freePort(), options.workDir().resolve("broker"));
+             S3StandIn s3 = new S3StandIn(0, options.s3Latency())) {
+
+            System.out.printf("PostgreSQL on %d, AMQP broker on %d, S3 stand-in at %s%n",
+                    postgres.getPort(), broker.port(), s3.endpoint());
+            List<String> common = List.of(
+                    "--spring.datasource.url=" + postgres.getJdbcUrl("postgres", "postgres"),
+                    "--spring.datasource.username=postgres",
+                    "--spring.datasource.password=postgres",
+                    "--spring.jpa.show-sql=false",
+                    "--spring.rabbitmq.host=localhost",
+                    "--spring.rabbitmq.port=" + broker.port(),
+                    "--aws.s3.endpoint=" + s3.endpoint(),
+                    "--aws.s3.bucket=" + BUCKET,
+                    "--aws.region=us-east-1",
+                    "--aws.secretKey=loadtest");
+
+            // The web app creates the schema; workers start once it is up so they don't race on DDL
+            int webPort = options.webArgs().stream()
+                    .filter(arg -> propertyName(arg).equals("--server.port"))
+                    .map(arg -> Integer.parseInt(arg.substring(arg.indexOf('=') + 1)))
+                    .findFirst()
+                    .orElse(freePort());
+            List<String> webArgs = new ArrayList<>(common);
+            webArgs.addAll(List.of("--server.port=" + webPort, "--aws.accessKey=loadtest"));
+            webArgs = withOverrides(webArgs, options.webArgs());
+            AppProcess web = new AppProcess("web", options.webJar(), options.webJvmArgs(), webArgs, options.workDir());
+            apps.add(web);
+            web.awaitStarted(Duration.ofMinutes(3));
+
+            List<AppProcess> workers = new ArrayList<>();
+            for (int i = 1; i <= options.workers(); i++) {
+                List<String> workerArgs = new ArrayList<>(common);
+                // The embedded broker has no TTL dead-lettering for the delayed retry queues
+                workerArgs.addAll(List.of("--server.port=0", "--aws.accessKeyId=loadtest", "--worker.retry.broker-backoff=false"));
+                workerArgs = withOverrides(workerArgs, options.workerArgs());
+                AppProcess worker = new AppProcess("worker-" + i, options.workerJar(), options.workerJvmArgs(), workerArgs, options.workDir());
+                apps.add(worker);
+                workers.add(worker);
+            }
+            for (AppProcess worker : workers) {
+                worker.awaitStarted(Duration.ofMinutes(3));
+            }
+            System.out.printf("Web app on %d and %d worker(s) started, logs in %s%n", webPort, workers.size(), options.workDir());
+
+            LoadDriver driver = new LoadDriver(options, URI.create("http://localhost:" + webPort), images);
+            try (Connection events = subscribeToCompletions(broker.port(), driver)) {
+                driver.run(System.out);
+            }
+
+            Path report = options.workDir().resolve("report.txt");
+            try (OutputStream file = new FileOutputStream(report.toFile());
+                 PrintStream out = new PrintStream(new TeeOutputStream(System.out, file), true)) {
+                driver.report(out, s3.requestCounts());
+            }
+            System.out.println("Report written to " + report);
+        } finally {
+            for (int i = apps.size() - 1; i >= 0; i--) {
+                apps.get(i).close();
+            }
+        }
+    }
+
+    /**
+     * Receive the workers' thumbnail completion events on an exclusive queue bound to the events exchange.
+     */
+    private static Connection subscribeToCompletions(int brokerPort, LoadDriver driver) throws Exception {
+        ConnectionFactory factory = new ConnectionFactory();
+        factory.setHost("localhost");
+        factory.setPort(brokerPort);
+        factory.setUsername("guest");
+        factory.setPassword("guest");
+        Connection connection = factory.newConnection("loadtest");
+
+        ObjectMapper jsonMapper = new ObjectMapper();
+        ObjectMapper cborMapper = new CBORMapper(); // workers running with messaging.codec=cbor
+        Channel channel = connection.createChannel();
+        channel.exchangeDeclare(IMAGE_EVENTS_EXCHANGE, "fanout", true);
+        String queue = channel.queueDeclare().getQueue();
+        channel.queueBind(queue, IMAGE_EVENTS_EXCHANGE, "");
+        channel.basicConsume(queue, true, (tag, delivery) -> {
+            ObjectMapper mapper = "application/cbor".equals(delivery.getProperties().getContentType()) ? cborMapper : jsonMapper;
+            JsonNode event = mapper.readTree(delivery.getBody());
+            driver.onThumbnailCompleted(event.path("key").asText(), event.path("thumbnailKey").asText());
+        }, tag -> { });
+        return connection;
+    }
+
+    /**
+     * Spring Boot joins a property given twice on the command line into a list, so the
+     * defaults that an extra argument sets again are left out.
+     */
+    private static List<String> withOverrides(List<String> defaults, List<String> overrides) {
+        Set<String> overridden = overrides.stream().map(LoadTest::propertyName).collect(Collectors.toSet());
+        List<String> args = defaults.stream()
+                .filter(arg -> !overridden.contains(propertyName(arg)))
+                .collect(Collectors.toCollection(ArrayList::new));
+        args.addAll(overrides);
+        return args;
+    }
+
+    private static String propertyName(String arg) {
+        int equals = arg.indexOf('=');
+        return equals < 0 ? arg : arg.substring(0, equals);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * Writes the report to the console and to the report file at once.
+     */
+    private static class TeeOutputStream extends OutputStream {
+        private final OutputStream first;
+        private final OutputStream second;
+
+        TeeOutputStream(OutputStream first, OutputStream second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            first.write(b);
+            second.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            first.write(b, off, len);
+            second.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            first.flush();
+            second.flush();
+        }
+    }
+}
@@ -0,0 +1,418 @@
+package com.microsoft.migration.assets.loadtest;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory stand-in for the subset of the S3 REST API the apps use: put, get (with ranges),
+ * head, copy and delete of objects, multipart uploads and ListObjectsV2, addressed path-style
+ * ({@code /bucket/key}). Every bucket name maps to the same object store and requests are not
+ * authenticated. An optional delay per request approximates the latency of the real service.
+ */
+class S3StandIn implements AutoCloseable {
+    private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.RFC_1123_DATE_TIME.withZone(ZoneOffset.UTC);
+    private static final DateTimeFormatter ISO_DATE = DateTimeFormatter.ISO_INSTANT;
+
+    private record StoredObject(byte[] content, String contentType, String eTag, Instant lastModified) {
+    }
+
+    private record MultipartUpload(String key, String contentType, NavigableMap<Integer, byte[]> parts) {
+    }
+
+    private final NavigableMap<String, StoredObject> objects = new ConcurrentSkipListMap<>();
+    private final Map<String, MultipartUpload> uploads = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> requestCounts = new ConcurrentSkipListMap<>();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Duration latency;
+    private final HttpServer server;
+
+    S3StandIn(int port, Duration latency) throws IOException {
+        this.latency = latency;
+        this.server = HttpServer.create(new InetSocketAddress("localhost", port), 512);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    String endpoint() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Requests served so far, by operation.
+     */
+    Map<String, Long> requestCounts() {
+        Map<String, Long> counts = new HashMap<>();
+        requestCounts.forEach((operation, count) -> counts.put(operation, count.sum()));
+        return counts;
+    }
+
+    long objectCount() {
+        return objects.size();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!latency.isZero()) {
+                Thread.sleep(latency);
+            }
+
+            // Path-style: /bucket[/key]
+            String path = exchange.getRequestURI().getPath();
+            int slash = path.indexOf('/', 1);
+            String key = slash < 0 ? "" : path.substring(slash + 1);
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            String method = exchange.getRequestMethod();
+
+            if (key.isEmpty()) {
+                if ("GET".equals(method)) {
+                    count("ListObjectsV2");
+                    listObjects(exchange, query);
+                } else {
+                    // Bucket creation and other bucket operations are accepted as no-ops
+                    count(method + "Bucket");
+                    drain(exchange.getRequestBody());
+                    send(exchange, 200, null, null);
+                }
+                return;
+            }
+
+            switch (method) {
+                case "PUT" -> {
+                    if (query.containsKey("uploadId")) {
+                        count("UploadPart");
+                        uploadPart(exchange, query);
+                    } else if (exchange.getRequestHeaders().containsKey("x-amz-copy-source")) {
+                        count("CopyObject");
+                        copyObject(exchange, key);
+                    } else {
+                        count("PutObject");
+                        putObject(exchange, key);
+                    }
+                }
+                case "POST" -> {
+                    if (query.containsKey("uploads")) {
+                        count("CreateMultipartUpload");
+                        createMultipartUpload(exchange, key);
+                    } else if (query.containsKey("uploadId")) {
+                        count("CompleteMultipartUpload");
+                        completeMultipartUpload(exchange, key, query.get("uploadId"));
+                    } else {
+                        sendError(exchange, 501, "NotImplemented", "POST " + path);
+                    }
+                }
+                case "GET" -> {
+                    count("GetObject");
+                    getObject(exchange, key, true);
+                }
+                case "HEAD" -> {
+                    count("HeadObject");
+                    getObject(exchange, key, false);
+                }
+                case "DELETE" -> {
+                    if (query.containsKey("uploadId")) {
+                        count("AbortMultipartUpload");
+                        uploads.remove(query.get("uploadId"));
+                    } else {
+                        count("DeleteObject");
+                        objects.remove(key);
+                    }
+                    send(exchange, 204, null, null);
+                }
+                default -> sendError(exchange, 405, "MethodNotAllowed", method);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            sendError(exchange, 500, "InternalError", String.valueOf(e.getMessage()));
+        }
+    }
+
+    private void putObject(HttpExchange exchange, String key) throws IOException {
+        byte[] content = readBody(exchange);
+        StoredObject object = new StoredObject(content, contentType(exchange.getRequestHeaders()), md5(content), Instant.now());
+        objects.put(key, object);
+        exchange.getResponseHeaders().set("ETag", object.eTag());
+        send(exchange, 200, null, null);
+    }
+
+    private void copyObject(HttpExchange exchange, String key) throws IOException {
+        drain(exchange.getRequestBody());
+        String source = URLDecoder.decode(exchange.getRequestHeaders().getFirst("x-amz-copy-source"), StandardCharsets.UTF_8);
+        source = source.startsWith("/") ? source.substring(1) : source;
+        StoredObject original = objects.get(source.substring(source.indexOf('/') + 1));
+        if (original == null) {
+            sendError(exchange, 404, "NoSuchKey", source);
+            return;
+        }
+        StoredObject copy = new StoredObject(original.content(), original.contentType(), original.eTag(), Instant.now());
+        objects.put(key, copy);
+        send(exchange, 200, "application/xml", "<CopyObjectResult><LastModified>" + ISO_DATE.format(copy.lastModified())
+                + "</LastModified><ETag>" + escape(copy.eTag()) + "</ETag></CopyObjectResult>");
+    }
+
+    private void createMultipartUpload(HttpExchange exchange, String key) throws IOException {
+        drain(exchange.getRequestBody());
+        String uploadId = UUID.randomUUID().toString();
+        uploads.put(uploadId, new MultipartUpload(key, contentType(exchange.getRequestHeaders()), new ConcurrentSkipListMap<>()));
+        send(exchange, 200, "application/xml", "<InitiateMultipartUploadResult><Bucket>bucket</Bucket><Key>" + escape(key)
+                + "</Key><UploadId>" + uploadId + "</UploadId></InitiateMultipartUploadResult>");
+    }
+
+    private void uploadPart(HttpExchange exchange, Map<String, String> query) throws IOException {
+        MultipartUpload upload = uploads.get(query.get("uploadId"));
+        byte[] content = readBody(exchange);
+        if (upload == null) {
+            sendError(exchange, 404, "NoSuchUpload", query.get("uploadId"));
+            return;
+        }
+        upload.parts().put(Integer.parseInt(query.get("partNumber")), content);
+        exchange.getResponseHeaders().set("ETag", md5(content));
+        send(exchange, 200, null, null);
+    }
+
+    private void completeMultipartUpload(HttpExchange exchange, String key, String uploadId) throws IOException {
+        drain(exchange.getRequestBody());
+        MultipartUpload upload = uploads.remove(uploadId);
+        if (upload == null) {
+            sendError(exchange, 404, "NoSuchUpload", uploadId);
+            return;
+        }
+
+        // All uploaded parts in order; the part list in the request body is not checked
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        for (byte[] part : upload.parts().values()) {
+            content.writeBytes(part);
+        }
+        byte[] bytes = content.toByteArray();
+        String eTag = md5(bytes).replace("\"", "").concat("-" + upload.parts().size());
+        objects.put(key, new StoredObject(bytes, upload.contentType(), "\"" + eTag + "\"", Instant.now()));
+        send(exchange, 200, "application/xml", "<CompleteMultipartUploadResult><Bucket>bucket</Bucket><Key>" + escape(key)
+                + "</Key><ETag>&quot;" + eTag + "&quot;</ETag></CompleteMultipartUploadResult>");
+    }
+
+    private void getObject(HttpExchange exchange, String key, boolean withBody) throws IOException {
+        StoredObject object = objects.get(key);
+        if (object == null) {
+            if (withBody) {
+                sendError(exchange, 404, "NoSuchKey", key);
+            } else {
+                exchange.sendResponseHeaders(404, -1);
+            }
+            return;
+        }
+
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("Content-Type", object.contentType());
+        headers.set("ETag", object.eTag());
+        headers.set("Last-Modified", HTTP_DATE.format(object.lastModified()));
+        headers.set("Accept-Ranges", "bytes");
+
+        byte[] content = object.content();
+        int start = 0;
+        int end = content.length - 1;
+        int status = 200;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if (withBody && range != null && range.startsWith("bytes=")) {
+            String[] bounds = range.substring("bytes=".length()).split("-", 2);
+            start = Integer.parseInt(bounds[0]);
+            end = bounds[1].isEmpty() ? end : Math.min(Integer.parseInt(bounds[1]), end);
+            headers.set("Content-Range", "bytes " + start + "-" + end + "/" + content.length);
+            status = 206;
+        }
+
+        int length = Math.max(end - start + 1, 0);
+        if (!withBody) {
+            headers.set("Content-Length", String.valueOf(length));
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(status, length == 0 ? -1 : length);
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write(content, start, length);
+        }
+    }
+
+    private void listObjects(HttpExchange exchange, Map<String, String> query) throws IOException {
+        String prefix = query.getOrDefault("prefix", "");
+        int maxKeys = Integer.parseInt(query.getOrDefault("max-keys", "1000"));
+        String token = query.get("continuation-token");
+        String after = token != null
+                ? new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8)
+                : query.getOrDefault("start-after", "");
+
+        StringBuilder contents = new StringBuilder();
+        int keyCount = 0;
+        String lastKey = null;
+        boolean truncated = false;
+        for (Map.Entry<String, StoredObject> entry : objects.tailMap(after, false).entrySet()) {
+            if (!entry.getKey().startsWith(prefix)) {
+                if (entry.getKey().compareTo(prefix) > 0) {
+                    break;
+                }
+                continue;
+            }
+            if (keyCount == maxKeys) {
+                truncated = true;
+                break;
+            }
+            StoredObject object = entry.getValue();
+            contents.append("<Contents><Key>").append(escape(entry.getKey()))
+                    .append("</Key><LastModified>").append(ISO_DATE.format(object.lastModified()))
+                    .append("</LastModified><ETag>").append(escape(object.eTag()))
+                    .append("</ETag><Size>").append(object.content().length)
+                    .append("</Size><StorageClass>STANDARD</StorageClass></Contents>");
+            keyCount++;
+            lastKey = entry.getKey();
+        }
+
+        StringBuilder result = new StringBuilder("<ListBucketResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\">")
+                .append("<Name>bucket</Name><Prefix>").append(escape(prefix))
+                .append("</Prefix><KeyCount>").append(keyCount)
+                .append("</KeyCount><MaxKeys>").append(maxKeys)
+                .append("</MaxKeys><IsTruncated>").append(truncated).append("</IsTruncated>")
+                .append(contents);
+        if (token != null) {
+            result.append("<ContinuationToken>").append(escape(token)).append("</ContinuationToken>");
+        }
+        if (truncated) {
+            result.append("<NextContinuationToken>")
+                    .append(Base64.getUrlEncoder().encodeToString(lastKey.getBytes(StandardCharsets.UTF_8)))
+                    .append("</NextContinuationToken>");
+        }
+        send(exchange, 200, "application/xml", result.append("</ListBucketResult>").toString());
+    }
+
+    private byte[] readBody(HttpExchange exchange) throws IOException {
+        Headers headers = exchange.getRequestHeaders();
+        String contentSha256 = headers.getFirst("x-amz-content-sha256");
+        String contentEncoding = headers.getFirst("Content-Encoding");
+        try (InputStream body = exchange.getRequestBody()) {
+            if ((contentSha256 != null && contentSha256.startsWith("STREAMING-"))
+                    || (contentEncoding != null && contentEncoding.contains("aws-chunked"))) {
+                return readAwsChunked(body);
+            }
+            return body.readAllBytes();
+        }
+    }
+
+    /**
+     * Decode the aws-chunked encoding the SDK uses for signed streaming payloads over plain HTTP:
+     * {@code <hex-size>;chunk-signature=...\r\n<data>\r\n}, ending with a zero-size chunk and
+     * optional trailers.
+     */
+    private static byte[] readAwsChunked(InputStream in) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        while (true) {
+            String header = readLine(in);
+            int extension = header.indexOf(';');
+            int size = Integer.parseInt((extension < 0 ? header : header.substring(0, extension)).trim(), 16);
+            if (size == 0) {
+                drain(in); // trailers
+                return content.toByteArray();
+            }
+            content.writeBytes(in.readNBytes(size));
+            readLine(in);
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) >= 0 && c != '\n') {
+            if (c != '\r') {
+                line.append((char) c);
+            }
+        }
+        return line.toString();
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        in.transferTo(OutputStream.nullOutputStream());
+    }
+
+    private void count(String operation) {
+        requestCounts.computeIfAbsent(operation, o -> new LongAdder()).increment();
+    }
+
+    private static String contentType(Headers headers) {
+        String contentType = headers.getFirst("Content-Type");
+        return contentType != null ? contentType : "application/octet-stream";
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        for (String parameter : rawQuery.split("&")) {
+            int equals = parameter.indexOf('=');
+            String name = equals < 0 ? parameter : parameter.substring(0, equals);
+            String value = equals < 0 ? "" : parameter.substring(equals + 1);
+            query.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return query;
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String code, String message) throws IOException {
+        send(exchange, status, "application/xml",
+                "<Error><Code>" + code + "</Code><Message>" + escape(message) + "</Message></Error>");
+    }
+
+    private static String md5(byte[] content) {
+        try {
+            return "\"" + HexFormat.of().formatHex(MessageDigest.getInstance("MD5").digest(content)) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String escape(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+}
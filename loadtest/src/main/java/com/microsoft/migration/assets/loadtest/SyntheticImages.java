@@ -0,0 +1,59 @@
+package com.microsoft.migration.assets.loadtest;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Photo-like upload corpus: gradients, shapes and noise, so that encoded sizes and decode
+ * costs resemble camera images rather than flat colors. Generated from a fixed seed.
+ */
+final class SyntheticImages {
+
+    private SyntheticImages() {
+    }
+
+    static List<byte[]> create(int width, int height, String format, int count) throws IOException {
+        Random random = new Random(42);
+        List<byte[]> images = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = image.createGraphics();
+            try {
+                g.setPaint(new GradientPaint(0, 0, new Color(random.nextInt(0xffffff)),
+                        width, height, new Color(random.nextInt(0xffffff))));
+                g.fillRect(0, 0, width, height);
+                for (int shape = 0; shape < 40; shape++) {
+                    g.setColor(new Color(random.nextInt(0xffffff)));
+                    g.fillOval(random.nextInt(width), random.nextInt(height),
+                            1 + random.nextInt(Math.max(width / 3, 1)), 1 + random.nextInt(Math.max(height / 3, 1)));
+                }
+            } finally {
+                g.dispose();
+            }
+
+            int[] row = new int[width];
+            for (int y = 0; y < height; y++) {
+                image.getRGB(0, y, width, 1, row, 0, width);
+                for (int x = 0; x < width; x++) {
+                    row[x] ^= random.nextInt(8) * 0x010101;
+                }
+                image.setRGB(0, y, width, 1, row, 0, width);
+            }
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            if (!ImageIO.write(image, format, out)) {
+                throw new IllegalArgumentException("No image writer available for format: " + format);
+            }
+            images.add(out.toByteArray());
+        }
+        return images;
+    }
+}
@@ -0,0 +1,17 @@
+package com.microsoft.migration.assets.config;
+
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * In-memory caches in front of the storage service. Sizes and TTLs are set through
+ * spring.cache.caffeine.spec; entries are also evicted on uploads, deletes and
+ * thumbnail completion events from the worker.
+ */
+@Configuration
+@EnableCaching
+public class CacheConfig {
+    public static final String LISTINGS_CACHE = "storage-listings";
+    public static final String OBJECT_INFO_CACHE = "storage-object-info";
+    public static final String ITEMS_CACHE = "storage-items";
+}
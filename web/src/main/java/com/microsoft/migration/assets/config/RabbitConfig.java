@@ -1,37 +1,77 @@
 package com.microsoft.migration.assets.config;
 
 import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.Declarables;
+import org.springframework.amqp.core.ExchangeBuilder;
+import org.springframework.amqp.core.FanoutExchange;
+import org.springframework.amqp.core.MessageProperties;
 import org.springframework.amqp.core.Queue;
 import org.springframework.amqp.core.QueueBuilder;
+import org.springframework.amqp.core.TopicExchange;
 import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.support.converter.ContentTypeDelegatingMessageConverter;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 @Configuration
 public class RabbitConfig {
-    public static final String QUEUE_NAME = "image-processing";
+    public static final String IMAGE_PROCESSING_EXCHANGE = "image-processing"; // topic, routed by storage type
+    public static final String S3_QUEUE = "image-processing.s3";
+    public static final String LOCAL_QUEUE = "image-processing.local";
+    public static final String IMAGE_EVENTS_EXCHANGE = "image-events"; // fanout for processing results
 
+    /**
+     * Messages are published with the storage type as routing key, into one queue per type, so
+     * each worker profile consumes only what it can process. Both queues are declared here too,
+     * so messages are kept even before a worker of that type has started.
+     */
     @Bean
-    public Queue imageProcessingQueue() {
-        return QueueBuilder.durable(QUEUE_NAME).build();
+    public Declarables imageProcessingQueues() {
+        TopicExchange exchange = ExchangeBuilder.topicExchange(IMAGE_PROCESSING_EXCHANGE).durable(true).build();
+        Queue s3Queue = QueueBuilder.durable(S3_QUEUE).build();
+        Queue localQueue = QueueBuilder.durable(LOCAL_QUEUE).build();
+        return new Declarables(exchange, s3Queue, localQueue,
+                BindingBuilder.bind(s3Queue).to(exchange).with("s3"),
+                BindingBuilder.bind(localQueue).to(exchange).with("local"));
     }
 
     @Bean
-    public MessageConverter jsonMessageConverter() {
-        return new Jackson2JsonMessageConverter();
+    public FanoutExchange imageEventsExchange() {
+        return ExchangeBuilder.fanoutExchange(IMAGE_EVENTS_EXCHANGE).durable(true).build();
+    }
+
+    /**
+     * Encodes with the codec set by messaging.codec (json or cbor) and decodes by content type,
+     * so the codec can be switched in one module at a time while messages of the other are in flight.
+     */
+    @Bean
+    public MessageConverter messageConverter(@Value("${messaging.codec:json}") String codec) {
+        Jackson2JsonMessageConverter json = new Jackson2JsonMessageConverter();
+        CborMessageConverter cbor = new CborMessageConverter();
+        ContentTypeDelegatingMessageConverter converter = new ContentTypeDelegatingMessageConverter(switch (codec) {
+            case "json" -> json;
+            case "cbor" -> cbor;
+            default -> throw new IllegalStateException("Unknown messaging.codec " + codec + ", expected json or cbor");
+        });
+        converter.addDelegate(MessageProperties.CONTENT_TYPE_JSON, json);
+        converter.addDelegate(CborMessageConverter.CONTENT_TYPE, cbor);
+        return converter;
     }
 
     @Bean
     public SimpleRabbitListenerContainerFactory rabbitListenerContainerFactory(
             ConnectionFactory connectionFactory,
-            SimpleRabbitListenerContainerFactoryConfigurer configurer) {
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            MessageConverter messageConverter) {
         SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
         configurer.configure(factory, connectionFactory);
-        factory.setMessageConverter(jsonMessageConverter());
+        factory.setMessageConverter(messageConverter);
         factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
         return factory;
     }
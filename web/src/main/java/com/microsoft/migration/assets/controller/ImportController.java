@@ -0,0 +1,89 @@
+package com.microsoft.migration.assets.controller;
+
+import com.microsoft.migration.assets.model.ImportJob;
+import com.microsoft.migration.assets.service.BulkImportService;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.List;
+
+/**
+ * Bulk imports: an archive streamed as request body, or a server-side directory or S3 prefix.
+ * Progress is reported at GET /s3/import/{id}.
+ */
+@RestController
+@RequestMapping("/s3/import")
+@RequiredArgsConstructor
+public class ImportController {
+
+    private final BulkImportService bulkImportService;
+
+    /**
+     * Import the images of a ZIP or TAR archive (optionally gzip compressed) sent as raw request
+     * body, e.g. curl -H 'Content-Type: application/zip' --data-binary @images.zip (with a form
+     * content type the container would parse the body). Entries are stored while the archive
+     * arrives; the response describes the finished import, GET /s3/import shows it while it runs.
+     * Archives declared larger than import.max-size are refused before reading; chunked ones fail
+     * the import when they exceed it.
+     */
+    @PostMapping
+    public ResponseEntity<?> importArchive(@RequestParam(defaultValue = "upload") String name,
+                                           HttpServletRequest request) throws IOException {
+        if (request.getContentLengthLong() > bulkImportService.getMaxSize()) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
+                    .body("Archive exceeds the maximum import size of " + bulkImportService.getMaxSize() / (1024 * 1024) + "MB");
+        }
+        try (InputStream inputStream = request.getInputStream()) {
+            ImportJob job = bulkImportService.importArchive(name, inputStream);
+            return job.getStatus() == ImportJob.Status.FAILED
+                    ? ResponseEntity.unprocessableEntity().body(job)
+                    : ResponseEntity.ok(job);
+        }
+    }
+
+    /**
+     * Start importing a directory below import.directory-root
+     */
+    @PostMapping(params = "directory")
+    public ResponseEntity<?> importDirectory(@RequestParam String directory) {
+        try {
+            return accepted(bulkImportService.importDirectory(directory));
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    /**
+     * Start importing a folder of the S3 source bucket
+     */
+    @PostMapping(params = "prefix")
+    public ResponseEntity<?> importPrefix(@RequestParam String prefix) {
+        try {
+            return accepted(bulkImportService.importPrefix(prefix));
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    @GetMapping
+    public List<ImportJob> getJobs() {
+        return bulkImportService.getJobs();
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<ImportJob> getJob(@PathVariable String id) {
+        return ResponseEntity.of(bulkImportService.getJob(id));
+    }
+
+    private static ResponseEntity<ImportJob> accepted(ImportJob job) {
+        return ResponseEntity.accepted()
+                .location(URI.create("/s3/import/" + job.getId()))
+                .body(job);
+    }
+}
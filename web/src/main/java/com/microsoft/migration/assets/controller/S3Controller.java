@@ -1,20 +1,37 @@
 package com.microsoft.migration.assets.controller;
 
 import com.microsoft.migration.assets.model.S3StorageItem;
+import com.microsoft.migration.assets.model.S3StoragePage;
+import com.microsoft.migration.assets.model.StorageObjectInfo;
 import com.microsoft.migration.assets.service.StorageService;
+import com.microsoft.migration.assets.util.LimitedInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.InputStreamResource;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
 import java.util.Optional;
 
@@ -23,12 +40,33 @@ import java.util.Optional;
 @RequiredArgsConstructor
 public class S3Controller {
 
+    // Request attributes of Tomcat's sendfile support
+    private static final String SENDFILE_SUPPORT_ATTR = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
+    static final int DEFAULT_PAGE_SIZE = 60;
+    static final int MAX_PAGE_SIZE = 1000; // S3 returns at most 1000 keys per list request
+
     private final StorageService storageService;
 
+    @Value("${storage.upload.stream.max-size:10GB}")
+    private DataSize maxStreamUploadSize;
+
+    @Value("${worker.thumbnail.formats:webp}")
+    private List<String> thumbnailFormats; // encodings the worker writes next to each thumbnail
+
     @GetMapping
-    public String listObjects(Model model) {
-        List<S3StorageItem> objects = storageService.listObjects();
-        model.addAttribute("objects", objects);
+    public String listObjects(@RequestParam(required = false) String cursor,
+                              @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int size,
+                              Model model) {
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        S3StoragePage page = storageService.listObjects(cursor, pageSize);
+        model.addAttribute("objects", page.getItems());
+        model.addAttribute("nextCursor", page.getNextCursor());
+        model.addAttribute("pageSize", pageSize);
+        model.addAttribute("thumbnailKeyPattern", StorageService.THUMBNAIL_KEY.pattern());
         return "list";
     }
 
@@ -54,13 +92,38 @@ public class S3Controller {
         }
     }
     
+    /**
+     * Upload the raw request body as a file, streaming it to storage as it arrives.
+     * Unlike the multipart form upload, the content is never spooled to disk or heap first.
+     * Bodies of unknown length (chunked) are cut off and discarded once they exceed the maximum size.
+     */
+    @PostMapping("/upload/stream")
+    public ResponseEntity<String> uploadObjectStream(@RequestParam("filename") String filename, HttpServletRequest request) {
+        if (request.getContentLengthLong() > maxStreamUploadSize.toBytes()) {
+            return tooLarge();
+        }
+
+        String contentType = request.getContentType() != null
+                ? request.getContentType() : MediaType.APPLICATION_OCTET_STREAM_VALUE;
+        try (InputStream inputStream = new LimitedInputStream(request.getInputStream(), maxStreamUploadSize.toBytes(), "Upload")) {
+            String key = storageService.uploadObject(filename, contentType, inputStream);
+            return ResponseEntity.ok(key);
+        } catch (LimitedInputStream.LimitExceededException e) {
+            return tooLarge();
+        } catch (IOException e) {
+            return ResponseEntity.badRequest().body("Failed to upload file: " + e.getMessage());
+        }
+    }
+    
+    private ResponseEntity<String> tooLarge() {
+        return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
+                .body("File exceeds the maximum upload size of " + maxStreamUploadSize.toMegabytes() + "MB");
+    }
+
     @GetMapping("/view-page/{key}")
     public String viewObjectPage(@PathVariable String key, Model model, RedirectAttributes redirectAttributes) {
         try {
-            // Find the object in the list of objects
-            Optional<S3StorageItem> foundObject = storageService.listObjects().stream()
-                    .filter(obj -> obj.getKey().equals(key))
-                    .findFirst();
+            Optional<S3StorageItem> foundObject = storageService.findObject(key);
             
             if (foundObject.isPresent()) {
                 model.addAttribute("object", foundObject.get());
@@ -76,15 +139,76 @@ public class S3Controller {
     }
 
     @GetMapping("/view/{key}")
-    public ResponseEntity<InputStreamResource> viewObject(@PathVariable String key) {
+    public ResponseEntity<InputStreamResource> viewObject(@PathVariable String key,
+                                                          @RequestHeader HttpHeaders requestHeaders,
+                                                          WebRequest webRequest,
+                                                          HttpServletRequest request,
+                                                          HttpServletResponse response) {
         try {
-            InputStream inputStream = storageService.getObject(key);
-            
+            // Thumbnails may also be stored in smaller formats; pick one the browser accepts
+            if (StorageService.THUMBNAIL_KEY.matcher(key).matches()) {
+                response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+                key = negotiateThumbnailFormat(key, requestHeaders);
+            }
+
+            // Let the browser fetch the bytes from storage directly when possible
+            Optional<String> directUrl = storageService.getDirectUrl(key);
+            if (directUrl.isPresent()) {
+                return ResponseEntity.status(HttpStatus.FOUND)
+                        .location(URI.create(directUrl.get()))
+                        .build();
+            }
+
+            StorageObjectInfo info = storageService.getObjectInfo(key);
+
+            // Answer conditional requests from the validators alone, before reading any content.
+            // This also sets the ETag and Last-Modified headers on the response.
+            long lastModified = info.getLastModified() != null ? info.getLastModified().toEpochMilli() : -1;
+            if (webRequest.checkNotModified(info.getETag(), lastModified)) {
+                return null;
+            }
+
             HttpHeaders headers = new HttpHeaders();
-            // Use a generic content type if we don't know the exact type
-            headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
-            
-            return ResponseEntity.ok()
+            headers.setContentType(resolveContentType(info.getContentType()));
+            headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+            List<HttpRange> ranges;
+            try {
+                ranges = requestHeaders.getRange();
+            } catch (IllegalArgumentException e) {
+                ranges = List.of(); // ignore malformed Range headers and send the whole object
+            }
+
+            // Multiple ranges are answered with the whole object, which RFC 9110 allows
+            HttpStatus status = HttpStatus.OK;
+            long start = 0;
+            long end = info.getSize() - 1;
+            if (ranges.size() == 1) {
+                HttpRange range = ranges.get(0);
+                try {
+                    start = range.getRangeStart(info.getSize());
+                    end = range.getRangeEnd(info.getSize());
+                } catch (IllegalArgumentException e) {
+                    return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                            .header(HttpHeaders.CONTENT_RANGE, "bytes */" + info.getSize())
+                            .build();
+                }
+                status = HttpStatus.PARTIAL_CONTENT;
+                headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + info.getSize());
+            }
+            headers.setContentLength(end - start + 1);
+
+            // Files on local disk are sent without passing through the heap
+            Optional<Path> localFile = storageService.getLocalFile(key);
+            if (localFile.isPresent()) {
+                sendFile(localFile.get(), start, end, status, headers, request, response);
+                return null;
+            }
+
+            InputStream inputStream = status == HttpStatus.PARTIAL_CONTENT
+                    ? storageService.getObject(key, start, end)
+                    : storageService.getObject(key);
+            return ResponseEntity.status(status)
                     .headers(headers)
                     .body(new InputStreamResource(inputStream));
         } catch (IOException e) {
@@ -92,6 +216,78 @@ public class S3Controller {
         }
     }
 
+    /**
+     * Send the byte range [start, end] of a local file with a zero-copy transfer.
+     * Under Tomcat the file is handed to the connector's sendfile support, which writes it from
+     * the page cache to the socket after the handler returns; otherwise FileChannel.transferTo is used.
+     */
+    private void sendFile(Path file, long start, long end, HttpStatus status, HttpHeaders headers,
+                          HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setStatus(status.value());
+        headers.forEach((name, values) -> values.forEach(value -> response.addHeader(name, value)));
+
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTR))) {
+            request.setAttribute(SENDFILE_FILENAME_ATTR, file.toRealPath().toString());
+            request.setAttribute(SENDFILE_START_ATTR, start);
+            request.setAttribute(SENDFILE_END_ATTR, end + 1); // exclusive
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            while (position <= end) {
+                position += channel.transferTo(position, end + 1 - position, out);
+            }
+        }
+    }
+
+    /**
+     * Return the key of the most preferred thumbnail encoding that the client explicitly accepts
+     * and that exists, or the key itself. Wildcards do not count, so clients that did not ask
+     * for a modern format keep getting the original one. Only the encodings the worker is
+     * configured to write are looked up, so accepting others costs no storage request.
+     */
+    private String negotiateThumbnailFormat(String key, HttpHeaders requestHeaders) {
+        List<MediaType> accepted;
+        try {
+            accepted = requestHeaders.getAccept();
+        } catch (InvalidMediaTypeException e) {
+            return key;
+        }
+
+        for (String formatKey : storageService.getThumbnailFormatKeys(key)) {
+            String subtype = formatKey.substring(formatKey.lastIndexOf('.') + 1);
+            if (thumbnailFormats.stream().noneMatch(format -> subtype.equalsIgnoreCase(format.trim()))) {
+                continue;
+            }
+            boolean acceptable = accepted.stream().anyMatch(mediaType -> "image".equals(mediaType.getType())
+                    && subtype.equals(mediaType.getSubtype()) && mediaType.getQualityValue() > 0);
+            if (!acceptable) {
+                continue;
+            }
+            try {
+                storageService.getObjectInfo(formatKey);
+                return formatKey;
+            } catch (IOException e) {
+                // Not generated in this format
+            }
+        }
+        return key;
+    }
+
+    private MediaType resolveContentType(String contentType) {
+        // Use a generic content type if we don't know the exact type
+        if (contentType == null) {
+            return MediaType.APPLICATION_OCTET_STREAM;
+        }
+        try {
+            return MediaType.parseMediaType(contentType);
+        } catch (InvalidMediaTypeException e) {
+            return MediaType.APPLICATION_OCTET_STREAM;
+        }
+    }
+
     @PostMapping("/delete/{key}")
     public String deleteObject(@PathVariable String key, RedirectAttributes redirectAttributes) {
         try {
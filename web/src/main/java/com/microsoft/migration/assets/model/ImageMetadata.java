@@ -3,13 +3,20 @@ package com.microsoft.migration.assets.model;
 import jakarta.persistence.*;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.springframework.data.domain.Persistable;
 
 import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
 
 @Entity
+@Table(indexes = {
+    @Index(name = "idx_image_metadata_s3_key", columnList = "s3Key"),
+    @Index(name = "idx_image_metadata_content_hash", columnList = "contentHash")
+})
 @Data
 @NoArgsConstructor
-public class ImageMetadata {
+public class ImageMetadata implements Persistable<String> {
     @Id
     private String id;
     private String filename;
@@ -19,9 +26,35 @@ public class ImageMetadata {
     private String s3Url;
     private String thumbnailKey;
     private String thumbnailUrl;
+    private String contentHash; // SHA-256 of the original, hex encoded
+
+    // Thumbnail key of each rendition, by maximum dimension in pixels. Loaded only by the
+    // repository methods that fetch it, so listings do not query it once per row
+    @ElementCollection(fetch = FetchType.LAZY)
+    @CollectionTable(name = "image_metadata_renditions", joinColumns = @JoinColumn(name = "image_id"))
+    @MapKeyColumn(name = "max_dimension")
+    @Column(name = "thumbnail_key")
+    private Map<Integer, String> renditionKeys = new HashMap<>();
+
     private LocalDateTime uploadedAt;
     private LocalDateTime lastModified;
 
+    // Ids are assigned before saving, so tell Spring Data which rows are new: they are then
+    // inserted (in JDBC batches) instead of merged, which would first select each id
+    @Transient
+    private boolean persisted;
+
+    @Override
+    public boolean isNew() {
+        return !persisted;
+    }
+
+    @PostLoad
+    @PostPersist
+    protected void markPersisted() {
+        persisted = true;
+    }
+
     @PrePersist
     protected void onCreate() {
         uploadedAt = LocalDateTime.now();
@@ -0,0 +1,48 @@
+package com.microsoft.migration.assets.model;
+
+import lombok.Data;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of a bulk import, updated by the import threads while it runs
+ */
+@Data
+public class ImportJob {
+    public enum Status { RUNNING, COMPLETED, FAILED }
+
+    public static final int MAX_REPORTED_FAILURES = 100;
+
+    private final String id;
+    private final String source; // archive, directory or S3 prefix the entries are read from
+    private final Instant startedAt = Instant.now();
+    private volatile Instant finishedAt;
+    private volatile Status status = Status.RUNNING;
+    private volatile String error; // why the whole import stopped, e.g. an unreadable archive
+
+    private final AtomicLong found = new AtomicLong(); // entries read from the source
+    private final AtomicLong skipped = new AtomicLong(); // entries that are no images
+    private final AtomicLong stored = new AtomicLong(); // written to storage
+    private final AtomicLong recorded = new AtomicLong(); // metadata saved and queued for thumbnails
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong(); // content stored
+
+    // The first failed entries with their error
+    private final List<String> failures = new CopyOnWriteArrayList<>();
+
+    public void failed(String entry, Exception e) {
+        failed.incrementAndGet();
+        if (failures.size() < MAX_REPORTED_FAILURES) {
+            failures.add(entry + ": " + e.getMessage());
+        }
+    }
+
+    public void finish(Status status, String error) {
+        this.error = error;
+        this.finishedAt = Instant.now();
+        this.status = status;
+    }
+}
@@ -0,0 +1,42 @@
+package com.microsoft.migration.assets.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A message waiting to be published, written in the same transaction as the data it announces.
+ * Rows are deleted once the broker confirmed the message.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+public class OutboxEvent {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "outbox_event_seq")
+    @SequenceGenerator(name = "outbox_event_seq", sequenceName = "outbox_event_seq", allocationSize = 50)
+    private Long id; // also the publishing order
+
+    private String exchange;
+    private String routingKey;
+    private String contentType;
+
+    // Headers set by the message converter (type id, schema version, ...)
+    @JdbcTypeCode(SqlTypes.JSON)
+    private Map<String, Object> headers = new HashMap<>();
+
+    private byte[] payload;
+
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,19 @@
+package com.microsoft.migration.assets.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class S3StoragePage {
+    private List<S3StorageItem> items;
+    private String nextCursor; // null when this is the last page
+
+    public boolean hasMore() {
+        return nextCursor != null;
+    }
+}
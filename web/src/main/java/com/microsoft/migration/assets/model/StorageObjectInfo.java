@@ -0,0 +1,22 @@
+package com.microsoft.migration.assets.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Describes a stored object without its content: what is needed to answer
+ * conditional and range requests before touching the object itself.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StorageObjectInfo {
+    private String key;
+    private long size;
+    private String contentType;
+    private String eTag;
+    private Instant lastModified;
+}
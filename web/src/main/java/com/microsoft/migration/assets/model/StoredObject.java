@@ -0,0 +1,19 @@
+package com.microsoft.migration.assets.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * An object written to storage that is not recorded yet: no metadata row and no work message
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StoredObject {
+    private String key;
+    private String filename;
+    private String contentType;
+    private long size;
+    private String contentHash; // SHA-256 of the content, hex encoded
+}
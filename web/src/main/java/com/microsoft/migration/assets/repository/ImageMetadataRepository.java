@@ -1,10 +1,31 @@
 package com.microsoft.migration.assets.repository;
 
 import com.microsoft.migration.assets.model.ImageMetadata;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
 @Repository
 public interface ImageMetadataRepository extends JpaRepository<ImageMetadata, String> {
     // Basic CRUD operations are automatically provided by JpaRepository
-}
\ No newline at end of file
+
+    /**
+     * Find metadata by S3 key (backed by the s3_key index)
+     */
+    Optional<ImageMetadata> findByS3Key(String s3Key);
+
+    /**
+     * Find metadata by S3 key together with its rendition keys, in one query
+     */
+    @EntityGraph(attributePaths = "renditionKeys")
+    Optional<ImageMetadata> findWithRenditionKeysByS3Key(String s3Key);
+
+    /**
+     * Find metadata for a batch of S3 keys in a single query
+     */
+    List<ImageMetadata> findByS3KeyIn(Collection<String> s3Keys);
+}
@@ -3,25 +3,42 @@ package com.microsoft.migration.assets.service;
 import com.microsoft.migration.assets.model.ImageMetadata;
 import com.microsoft.migration.assets.model.ImageProcessingMessage;
 import com.microsoft.migration.assets.model.S3StorageItem;
+import com.microsoft.migration.assets.model.S3StoragePage;
+import com.microsoft.migration.assets.model.StorageObjectInfo;
+import com.microsoft.migration.assets.model.StoredObject;
 import com.microsoft.migration.assets.repository.ImageMetadataRepository;
+import io.micrometer.core.annotation.Timed;
 import lombok.RequiredArgsConstructor;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
-import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.*;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.security.DigestInputStream;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
-import static com.microsoft.migration.assets.config.RabbitConfig.QUEUE_NAME;
+import static com.microsoft.migration.assets.config.CacheConfig.ITEMS_CACHE;
+import static com.microsoft.migration.assets.config.CacheConfig.LISTINGS_CACHE;
+import static com.microsoft.migration.assets.config.CacheConfig.OBJECT_INFO_CACHE;
+import static com.microsoft.migration.assets.config.RabbitConfig.IMAGE_PROCESSING_EXCHANGE;
 
 @Service
 @RequiredArgsConstructor
@@ -29,28 +46,109 @@ import static com.microsoft.migration.assets.config.RabbitConfig.QUEUE_NAME;
 public class AwsS3Service implements StorageService {
 
     private final S3Client s3Client;
-    private final RabbitTemplate rabbitTemplate;
+    private final MessageOutbox messageOutbox;
+    private final TransactionTemplate transactionTemplate;
     private final ImageMetadataRepository imageMetadataRepository;
+    private final S3MultipartUploader multipartUploader;
+    private final S3PresignedUrlProvider presignedUrlProvider;
 
     @Value("${aws.s3.bucket}")
     private String bucketName;
 
+    @Value("${aws.s3.presigned-urls.enabled:false}")
+    private boolean presignedUrlsEnabled;
+
     @Override
+    @Cacheable(LISTINGS_CACHE)
+    @Timed(STORAGE_TIMER)
     public List<S3StorageItem> listObjects() {
         ListObjectsV2Request request = ListObjectsV2Request.builder()
                 .bucket(bucketName)
                 .build();
 
+        // Follow continuation tokens so that buckets with more than one page of keys are listed completely
+        List<S3StorageItem> items = new ArrayList<>();
+        for (ListObjectsV2Response response : s3Client.listObjectsV2Paginator(request)) {
+            items.addAll(toStorageItems(response.contents()));
+        }
+        return items;
+    }
+
+    @Override
+    @Cacheable(value = LISTINGS_CACHE, key = "#cursor + ':' + #pageSize")
+    @Timed(STORAGE_TIMER)
+    public S3StoragePage listObjects(String cursor, int pageSize) {
+        ListObjectsV2Request request = ListObjectsV2Request.builder()
+                .bucket(bucketName)
+                .maxKeys(pageSize)
+                .continuationToken(StringUtils.hasText(cursor) ? cursor : null)
+                .build();
+
         ListObjectsV2Response response = s3Client.listObjectsV2(request);
 
-        return response.contents().stream()
+        return new S3StoragePage(
+                toStorageItems(response.contents()),
+                Boolean.TRUE.equals(response.isTruncated()) ? response.nextContinuationToken() : null
+        );
+    }
+
+    @Override
+    @Cacheable(value = ITEMS_CACHE, unless = "#result == null")
+    public Optional<S3StorageItem> findObject(String key) throws IOException {
+        HeadObjectResponse response;
+        try {
+            response = s3Client.headObject(HeadObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .build());
+        } catch (NoSuchKeyException e) {
+            return Optional.empty();
+        } catch (S3Exception e) {
+            if (e.statusCode() == 404) {
+                return Optional.empty();
+            }
+            throw e;
+        }
+
+        Instant uploadedAt = imageMetadataRepository.findByS3Key(key)
+                .map(ImageMetadata::getUploadedAt)
+                .map(uploaded -> uploaded.atZone(java.time.ZoneId.systemDefault()).toInstant())
+                .orElse(response.lastModified()); // fallback to lastModified if metadata not found
+
+        return Optional.of(new S3StorageItem(
+                key,
+                extractFilename(key),
+                response.contentLength(),
+                response.lastModified(),
+                uploadedAt,
+                generateViewUrl(key)
+        ));
+    }
+
+    private List<S3StorageItem> toStorageItems(List<S3Object> listedObjects) {
+        // Leave out the other renditions and formats of the thumbnails
+        Set<String> listedKeys = listedObjects.stream()
+                .map(S3Object::key)
+                .collect(Collectors.toSet());
+        List<S3Object> s3Objects = listedObjects.stream()
+                .filter(s3Object -> !isThumbnailVariant(s3Object.key(), listedKeys::contains))
+                .collect(Collectors.toList());
+
+        // Look up metadata for the whole batch in one query instead of once per object
+        List<String> keys = s3Objects.stream()
+                .map(S3Object::key)
+                .collect(Collectors.toList());
+        Map<String, ImageMetadata> metadataByKey = keys.isEmpty() ? Map.of() :
+                imageMetadataRepository.findByS3KeyIn(keys).stream()
+                        .collect(Collectors.toMap(ImageMetadata::getS3Key, Function.identity(), (first, second) -> first));
+
+        return s3Objects.stream()
                 .map(s3Object -> {
                     // Try to get metadata for upload time
-                    Instant uploadedAt = imageMetadataRepository.findAll().stream()
-                            .filter(metadata -> metadata.getS3Key().equals(s3Object.key()))
-                            .map(metadata -> metadata.getUploadedAt().atZone(java.time.ZoneId.systemDefault()).toInstant())
-                            .findFirst()
-                            .orElse(s3Object.lastModified()); // fallback to lastModified if metadata not found
+                    ImageMetadata metadata = metadataByKey.get(s3Object.key());
+                    Instant uploadedAt = metadata != null && metadata.getUploadedAt() != null
+                            ? metadata.getUploadedAt().atZone(java.time.ZoneId.systemDefault()).toInstant()
+                            : s3Object.lastModified(); // fallback to lastModified if metadata not found
 
                     return new S3StorageItem(
                             s3Object.key(),
@@ -58,56 +156,157 @@ public class AwsS3Service implements StorageService {
                             s3Object.size(),
                             s3Object.lastModified(),
                             uploadedAt,
-                            generateUrl(s3Object.key())
+                            generateViewUrl(s3Object.key())
                     );
                 })
                 .collect(Collectors.toList());
     }
 
     @Override
+    @CacheEvict(value = LISTINGS_CACHE, allEntries = true)
+    @Timed(STORAGE_TIMER)
     public void uploadObject(MultipartFile file) throws IOException {
-        String key = generateKey(file.getOriginalFilename());
-        
-        PutObjectRequest request = PutObjectRequest.builder()
+        try (InputStream inputStream = file.getInputStream()) {
+            uploadObject(file.getOriginalFilename(), file.getContentType(), inputStream, file.getSize());
+        }
+    }
+
+    @Override
+    @CacheEvict(value = LISTINGS_CACHE, allEntries = true)
+    @Timed(STORAGE_TIMER)
+    public String uploadObject(String filename, String contentType, InputStream inputStream) throws IOException {
+        return uploadObject(filename, contentType, inputStream, -1);
+    }
+
+    private String uploadObject(String filename, String contentType, InputStream inputStream, long contentLength)
+            throws IOException {
+        StoredObject object = storeObject(filename, contentType, inputStream, contentLength);
+        recordObjects(List.of(object));
+        return object.getKey();
+    }
+
+    @Override
+    @Timed(STORAGE_TIMER)
+    public StoredObject storeObject(String filename, String contentType, InputStream inputStream, long contentLength)
+            throws IOException {
+        String key = generateKey(filename);
+
+        DigestInputStream hashingStream = StorageService.hashing(inputStream);
+        long size = multipartUploader.upload(bucketName, key, contentType, hashingStream, contentLength);
+        return new StoredObject(key, filename, contentType, size, StorageService.contentHash(hashingStream));
+    }
+
+    @Override
+    @CacheEvict(value = LISTINGS_CACHE, allEntries = true)
+    @Timed(STORAGE_TIMER)
+    public void recordObjects(List<StoredObject> objects) {
+        List<ImageMetadata> metadata = new ArrayList<>(objects.size());
+        List<ImageProcessingMessage> messages = new ArrayList<>(objects.size());
+        for (StoredObject object : objects) {
+            // Create metadata for the database
+            ImageMetadata imageMetadata = new ImageMetadata();
+            imageMetadata.setId(UUID.randomUUID().toString());
+            imageMetadata.setFilename(object.getFilename());
+            imageMetadata.setContentType(object.getContentType());
+            imageMetadata.setSize(object.getSize());
+            imageMetadata.setS3Key(object.getKey());
+            imageMetadata.setS3Url(generateUrl(object.getKey()));
+            imageMetadata.setContentHash(object.getContentHash());
+            metadata.add(imageMetadata);
+
+            // Message for thumbnail generation
+            messages.add(new ImageProcessingMessage(
+                object.getKey(),
+                object.getContentType(),
+                getStorageType(),
+                object.getSize(),
+                object.getContentHash()
+            ));
+        }
+
+        // Messages are published once the metadata is committed, so the worker always
+        // finds the rows it records the thumbnails on
+        transactionTemplate.executeWithoutResult(status -> {
+            imageMetadataRepository.saveAll(metadata);
+            messageOutbox.enqueueAll(IMAGE_PROCESSING_EXCHANGE, getStorageType(), messages);
+        });
+    }
+
+    @Override
+    @Timed(STORAGE_TIMER)
+    public InputStream getObject(String key) throws IOException {
+        GetObjectRequest request = GetObjectRequest.builder()
                 .bucket(bucketName)
                 .key(key)
-                .contentType(file.getContentType())
                 .build();
         
-        s3Client.putObject(request, RequestBody.fromInputStream(file.getInputStream(), file.getSize()));
-
-        // Send message to queue for thumbnail generation
-        ImageProcessingMessage message = new ImageProcessingMessage(
-            key,
-            file.getContentType(),
-            getStorageType(),
-            file.getSize()
-        );
-        rabbitTemplate.convertAndSend(QUEUE_NAME, message);
-
-        // Create and save metadata to database
-        ImageMetadata metadata = new ImageMetadata();
-        metadata.setId(UUID.randomUUID().toString());
-        metadata.setFilename(file.getOriginalFilename());
-        metadata.setContentType(file.getContentType());
-        metadata.setSize(file.getSize());
-        metadata.setS3Key(key);
-        metadata.setS3Url(generateUrl(key));
-        
-        imageMetadataRepository.save(metadata);
+        return s3Client.getObject(request);
     }
 
     @Override
-    public InputStream getObject(String key) throws IOException {
+    @Timed(STORAGE_TIMER)
+    public InputStream getObject(String key, long start, long end) throws IOException {
         GetObjectRequest request = GetObjectRequest.builder()
                 .bucket(bucketName)
                 .key(key)
+                .range("bytes=" + start + "-" + end)
                 .build();
-        
+
         return s3Client.getObject(request);
     }
 
     @Override
+    @Cacheable(OBJECT_INFO_CACHE)
+    public StorageObjectInfo getObjectInfo(String key) throws IOException {
+        // Uploaded objects live under unique keys and are never rewritten,
+        // so their metadata row is enough to describe them without calling S3
+        Optional<ImageMetadata> metadata = imageMetadataRepository.findByS3Key(key)
+                .filter(m -> m.getSize() != null && m.getUploadedAt() != null);
+        if (metadata.isPresent()) {
+            ImageMetadata m = metadata.get();
+            return new StorageObjectInfo(
+                    key,
+                    m.getSize(),
+                    m.getContentType(),
+                    "\"" + m.getId() + "\"",
+                    m.getUploadedAt().atZone(java.time.ZoneId.systemDefault()).toInstant()
+            );
+        }
+
+        // Objects without metadata (e.g. thumbnails) are described by a HEAD request
+        try {
+            HeadObjectResponse response = s3Client.headObject(HeadObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .build());
+            return new StorageObjectInfo(
+                    key,
+                    response.contentLength(),
+                    response.contentType(),
+                    response.eTag(),
+                    response.lastModified()
+            );
+        } catch (NoSuchKeyException e) {
+            throw new FileNotFoundException("Object not found: " + key);
+        } catch (S3Exception e) {
+            if (e.statusCode() == 404) {
+                throw new FileNotFoundException("Object not found: " + key);
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public Optional<String> getDirectUrl(String key) {
+        return presignedUrlsEnabled ? Optional.of(presignedUrlProvider.getUrl(key)) : Optional.empty();
+    }
+
+    @Override
+    @Caching(evict = {
+            @CacheEvict(value = LISTINGS_CACHE, allEntries = true),
+            @CacheEvict(value = OBJECT_INFO_CACHE, allEntries = true), // renditions and encodings are cached under keys of their own
+            @CacheEvict(value = ITEMS_CACHE, allEntries = true)
+    })
     public void deleteObject(String key) throws IOException {
         // Delete both original and thumbnail if it exists
         DeleteObjectRequest request = DeleteObjectRequest.builder()
@@ -116,6 +315,7 @@ public class AwsS3Service implements StorageService {
                 .build();
         
         s3Client.deleteObject(request);
+        presignedUrlProvider.evict(key);
 
         try {
             // Try to delete thumbnail if it exists
@@ -124,15 +324,34 @@ public class AwsS3Service implements StorageService {
                     .key(getThumbnailKey(key))
                     .build();
             s3Client.deleteObject(thumbnailRequest);
+            presignedUrlProvider.evict(getThumbnailKey(key));
         } catch (Exception e) {
             // Ignore if thumbnail doesn't exist
         }
+        getThumbnailFormatKeys(getThumbnailKey(key)).forEach(this::deleteRendition);
 
-        // Delete metadata from database
-        imageMetadataRepository.findAll().stream()
-                .filter(metadata -> metadata.getS3Key().equals(key))
-                .findFirst()
-                .ifPresent(metadata -> imageMetadataRepository.delete(metadata));
+        // Delete the other thumbnail renditions, their encodings and the metadata from database
+        imageMetadataRepository.findWithRenditionKeysByS3Key(key).ifPresent(metadata -> {
+            metadata.getRenditionKeys().values().stream()
+                    .filter(renditionKey -> !renditionKey.equals(getThumbnailKey(key)))
+                    .forEach(renditionKey -> {
+                        deleteRendition(renditionKey);
+                        getThumbnailFormatKeys(renditionKey).forEach(this::deleteRendition);
+                    });
+            imageMetadataRepository.delete(metadata);
+        });
+    }
+
+    private void deleteRendition(String renditionKey) {
+        try {
+            s3Client.deleteObject(DeleteObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(renditionKey)
+                    .build());
+            presignedUrlProvider.evict(renditionKey);
+        } catch (Exception e) {
+            // Ignore if the rendition doesn't exist
+        }
     }
 
     @Override
@@ -154,6 +373,11 @@ public class AwsS3Service implements StorageService {
         return s3Client.utilities().getUrl(request).toString();
     }
 
+    private String generateViewUrl(String key) {
+        // Private buckets can only be read through presigned URLs
+        return presignedUrlsEnabled ? presignedUrlProvider.getUrl(key) : generateUrl(key);
+    }
+
     private String generateKey(String filename) {
         return UUID.randomUUID().toString() + "-" + filename;
     }
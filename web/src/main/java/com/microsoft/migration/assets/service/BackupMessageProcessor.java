@@ -9,7 +9,8 @@ import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 
-import static com.microsoft.migration.assets.config.RabbitConfig.QUEUE_NAME;
+import static com.microsoft.migration.assets.config.RabbitConfig.LOCAL_QUEUE;
+import static com.microsoft.migration.assets.config.RabbitConfig.S3_QUEUE;
 
 import java.io.IOException;
 
@@ -27,7 +28,7 @@ public class BackupMessageProcessor {
      * Processes image messages from a backup queue for monitoring and resilience purposes.
      * Uses the same RabbitMQ API pattern as the worker module.
      */
-    @RabbitListener(queues = QUEUE_NAME)
+    @RabbitListener(queues = {S3_QUEUE, LOCAL_QUEUE})
     public void processBackupMessage(final ImageProcessingMessage message, 
                                     Channel channel, 
                                     @Header(AmqpHeaders.DELIVERY_TAG) long deliveryTag) {
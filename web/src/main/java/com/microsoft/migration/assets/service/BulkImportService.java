@@ -0,0 +1,435 @@
+package com.microsoft.migration.assets.service;
+
+import com.microsoft.migration.assets.model.ImportJob;
+import com.microsoft.migration.assets.model.StoredObject;
+import com.microsoft.migration.assets.util.LimitedInputStream;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveException;
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.ArchiveStreamFactory;
+import org.apache.commons.compress.compressors.CompressorException;
+import org.apache.commons.compress.compressors.CompressorStreamFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+
+/**
+ * Imports many images at once from a ZIP or TAR archive, a server-side directory or an S3 prefix.
+ * Entries are stored concurrently on a shared pool through {@link StorageService#storeObject}
+ * and recorded in batches with {@link StorageService#recordObjects}, so each batch costs one
+ * transaction with batched inserts and its work messages are published together.
+ * Jobs are kept in memory for the retention period so their progress can be queried.
+ */
+@Slf4j
+@Service
+public class BulkImportService {
+
+    private final StorageService storageService;
+    private final ObjectProvider<S3Client> s3ClientProvider; // only with S3 storage
+    private final Map<String, ImportJob> jobs = new ConcurrentHashMap<>();
+
+    @Value("${import.concurrency:16}")
+    private int concurrency; // entries stored at once, across all imports
+
+    @Value("${import.batch-size:500}")
+    private int batchSize; // stored objects recorded per transaction
+
+    @Value("${import.memory-buffer:8MB}")
+    private DataSize memoryBuffer; // larger archive entries are spooled to a temporary file
+
+    @Value("${import.max-size:10GB}")
+    private DataSize maxSize; // of an archive as received
+
+    @Value("${import.max-expanded-size:20GB}")
+    private DataSize maxExpandedSize; // of the entries read from an archive, against compression bombs
+
+    @Value("${import.directory-root:}")
+    private String directoryRoot; // directory imports are limited to this tree, disabled if empty
+
+    @Value("${import.s3.source-bucket:${aws.s3.bucket:}}")
+    private String sourceBucket;
+
+    @Value("${import.job-retention:24h}")
+    private Duration jobRetention;
+
+    private ExecutorService storeExecutor;
+    private ExecutorService jobExecutor;
+
+    public BulkImportService(StorageService storageService, ObjectProvider<S3Client> s3ClientProvider) {
+        this.storageService = storageService;
+        this.s3ClientProvider = s3ClientProvider;
+    }
+
+    @PostConstruct
+    public void init() {
+        storeExecutor = Executors.newFixedThreadPool(concurrency, new CustomizableThreadFactory("import-store-"));
+        jobExecutor = Executors.newCachedThreadPool(new CustomizableThreadFactory("import-job-"));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobExecutor.shutdownNow();
+        storeExecutor.shutdownNow();
+    }
+
+    /**
+     * Import the images of a ZIP or TAR archive, optionally gzip compressed, while it is read from
+     * the stream. Returns when every entry has been stored and recorded. Reading stops with a
+     * failed job once the archive exceeds import.max-size or its entries import.max-expanded-size.
+     */
+    public ImportJob importArchive(String name, InputStream inputStream) {
+        ImportJob job = startJob("archive " + name);
+        run(job, importer -> {
+            try (ArchiveInputStream<? extends ArchiveEntry> archive = openArchive(
+                    new LimitedInputStream(inputStream, maxSize.toBytes(), "Archive"))) {
+                InputStream entries = new LimitedInputStream(archive, maxExpandedSize.toBytes(), "Expanded archive");
+                ArchiveEntry entry;
+                while ((entry = archive.getNextEntry()) != null) {
+                    if (entry.isDirectory() || !importer.accept(entry.getName())) {
+                        continue;
+                    }
+                    if (!archive.canReadEntryData(entry)) {
+                        job.failed(entry.getName(), new IOException("Entry cannot be read from a stream (encrypted or unsupported method)"));
+                        continue;
+                    }
+                    importer.submit(buffer(entry.getName(), entries));
+                }
+            }
+        });
+        return job;
+    }
+
+    /**
+     * Largest archive importArchive accepts, in bytes
+     */
+    public long getMaxSize() {
+        return maxSize.toBytes();
+    }
+
+    /**
+     * Start importing the images below a directory of the import root, in the background
+     */
+    public ImportJob importDirectory(String directory) {
+        Path root = importRoot();
+        Path path;
+        try {
+            path = root.resolve(directory).toRealPath();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Directory not found: " + directory);
+        }
+        if (!path.startsWith(root) || !Files.isDirectory(path)) {
+            throw new IllegalArgumentException("Not a directory under the import root: " + directory);
+        }
+
+        ImportJob job = startJob("directory " + path);
+        runInBackground(job, importer -> {
+            try (Stream<Path> files = Files.walk(path)) {
+                for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                    if (importer.accept(file.toString())) {
+                        importer.submit(new Entry(path.relativize(file).toString(), Files.size(file),
+                            () -> Files.newInputStream(file), null));
+                    }
+                }
+            }
+        });
+        return job;
+    }
+
+    /**
+     * Start importing the images below a prefix of the source bucket, in the background.
+     * Imported objects get top-level keys, so a folder prefix never lists them again.
+     */
+    public ImportJob importPrefix(String prefix) {
+        S3Client s3Client = s3ClientProvider.getIfAvailable();
+        if (s3Client == null || !StringUtils.hasText(sourceBucket)) {
+            throw new IllegalStateException("S3 prefix imports need S3 storage and import.s3.source-bucket");
+        }
+        if (!StringUtils.hasText(prefix) || !prefix.endsWith("/")) {
+            throw new IllegalArgumentException("The prefix must name a folder, e.g. legacy/");
+        }
+
+        ImportJob job = startJob("s3://" + sourceBucket + "/" + prefix);
+        runInBackground(job, importer -> {
+            ListObjectsV2Request request = ListObjectsV2Request.builder()
+                .bucket(sourceBucket)
+                .prefix(prefix)
+                .build();
+            for (S3Object object : s3Client.listObjectsV2Paginator(request).contents()) {
+                if (importer.accept(object.key())) {
+                    importer.submit(new Entry(object.key(), object.size(),
+                        () -> s3Client.getObject(GetObjectRequest.builder().bucket(sourceBucket).key(object.key()).build()),
+                        null));
+                }
+            }
+        });
+        return job;
+    }
+
+    public Optional<ImportJob> getJob(String id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    /**
+     * Running jobs and those finished within the retention period, newest first
+     */
+    public List<ImportJob> getJobs() {
+        return jobs.values().stream()
+            .sorted(Comparator.comparing(ImportJob::getStartedAt).reversed())
+            .toList();
+    }
+
+    private ImportJob startJob(String source) {
+        Instant expired = Instant.now().minus(jobRetention);
+        jobs.values().removeIf(job -> job.getFinishedAt() != null && job.getFinishedAt().isBefore(expired));
+
+        ImportJob job = new ImportJob(UUID.randomUUID().toString(), source);
+        jobs.put(job.getId(), job);
+        log.info("Starting import {} of {}", job.getId(), source);
+        return job;
+    }
+
+    private void runInBackground(ImportJob job, ImportSource source) {
+        try {
+            jobExecutor.execute(() -> run(job, source));
+        } catch (RejectedExecutionException e) {
+            job.finish(ImportJob.Status.FAILED, "Shutting down");
+            throw e;
+        }
+    }
+
+    private void run(ImportJob job, ImportSource source) {
+        Importer importer = new Importer(job);
+        String error = null;
+        try {
+            source.readEntries(importer);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            error = "Interrupted";
+        } catch (Exception e) {
+            log.warn("Import {} stopped reading {}: {}", job.getId(), job.getSource(), e.getMessage());
+            error = e.getMessage() != null ? e.getMessage() : e.toString();
+        }
+
+        // Entries submitted before a failure are still stored and recorded
+        try {
+            importer.finish();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            error = "Interrupted";
+        }
+        job.finish(error == null ? ImportJob.Status.COMPLETED : ImportJob.Status.FAILED, error);
+        log.info("Import {} {}: {} recorded, {} skipped, {} failed of {} entries, {} MB in {} s",
+            job.getId(), job.getStatus(), job.getRecorded(), job.getSkipped(), job.getFailed(), job.getFound(),
+            job.getBytes().get() / (1024 * 1024), Duration.between(job.getStartedAt(), job.getFinishedAt()).toSeconds());
+    }
+
+    private static ArchiveInputStream<? extends ArchiveEntry> openArchive(InputStream inputStream)
+            throws IOException, ArchiveException {
+        InputStream in = new BufferedInputStream(inputStream);
+        try {
+            in = new BufferedInputStream(new CompressorStreamFactory().createCompressorInputStream(in));
+        } catch (CompressorException e) {
+            // Not compressed
+        }
+        String format = ArchiveStreamFactory.detect(in);
+        if (!ArchiveStreamFactory.ZIP.equals(format) && !ArchiveStreamFactory.TAR.equals(format)) {
+            throw new IOException("Unsupported archive format " + format + ", expected ZIP or TAR");
+        }
+        return new ArchiveStreamFactory().createArchiveInputStream(format, in);
+    }
+
+    /**
+     * Read the current archive entry, so that it can be stored on another thread while the
+     * archive is read on. Entries above the memory buffer are spooled to a temporary file.
+     */
+    private Entry buffer(String name, InputStream archive) throws IOException {
+        int limit = (int) memoryBuffer.toBytes();
+        byte[] head = archive.readNBytes(limit + 1);
+        if (head.length <= limit) {
+            return new Entry(name, head.length, () -> new ByteArrayInputStream(head), null);
+        }
+
+        Path spoolFile = Files.createTempFile("import-", ".tmp");
+        try (OutputStream out = Files.newOutputStream(spoolFile)) {
+            out.write(head);
+            archive.transferTo(out);
+        } catch (IOException e) {
+            Files.deleteIfExists(spoolFile);
+            throw e;
+        }
+        return new Entry(name, Files.size(spoolFile), () -> Files.newInputStream(spoolFile), spoolFile);
+    }
+
+    private Path importRoot() {
+        if (!StringUtils.hasText(directoryRoot)) {
+            throw new IllegalStateException("Directory imports are disabled, set import.directory-root to enable them");
+        }
+        try {
+            return Paths.get(directoryRoot).toRealPath();
+        } catch (IOException e) {
+            throw new IllegalStateException("Import root " + directoryRoot + " is not accessible", e);
+        }
+    }
+
+    private static String filename(String name) {
+        int lastSlashIndex = Math.max(name.lastIndexOf('/'), name.lastIndexOf('\\'));
+        return lastSlashIndex >= 0 ? name.substring(lastSlashIndex + 1) : name;
+    }
+
+    @FunctionalInterface
+    private interface ImportSource {
+        void readEntries(Importer importer) throws Exception;
+    }
+
+    @FunctionalInterface
+    private interface Content {
+        InputStream open() throws IOException;
+    }
+
+    /**
+     * An entry to import. The content is opened on the store thread; a spool file is deleted after.
+     */
+    private record Entry(String name, long size, Content content, Path spoolFile) {
+    }
+
+    /**
+     * Stores the entries of one job and records them in batches. At most import.concurrency
+     * entries of a job are in flight, which also bounds the memory buffered archive entries take.
+     */
+    private final class Importer {
+        private final ImportJob job;
+        private final Semaphore inFlight = new Semaphore(concurrency);
+        private final List<StoredObject> batch = new ArrayList<>();
+
+        Importer(ImportJob job) {
+            this.job = job;
+        }
+
+        /**
+         * Count an entry and tell whether it is imported: only images, no hidden files
+         */
+        boolean accept(String name) {
+            job.getFound().incrementAndGet();
+            String filename = filename(name);
+            String contentType = URLConnection.guessContentTypeFromName(filename);
+            if (filename.startsWith(".") || contentType == null || !contentType.startsWith("image/")) {
+                job.getSkipped().incrementAndGet();
+                return false;
+            }
+            return true;
+        }
+
+        void submit(Entry entry) throws InterruptedException {
+            inFlight.acquire();
+            try {
+                storeExecutor.execute(() -> store(entry));
+            } catch (RejectedExecutionException e) {
+                inFlight.release();
+                discard(entry);
+                throw e;
+            }
+        }
+
+        private void store(Entry entry) {
+            try (InputStream inputStream = entry.content().open()) {
+                String filename = filename(entry.name());
+                StoredObject object = storageService.storeObject(filename,
+                    URLConnection.guessContentTypeFromName(filename), inputStream, entry.size());
+                job.getStored().incrementAndGet();
+                job.getBytes().addAndGet(object.getSize());
+                add(object);
+            } catch (Exception e) {
+                log.debug("Import {} could not store {}: {}", job.getId(), entry.name(), e.getMessage());
+                job.failed(entry.name(), e);
+            } finally {
+                discard(entry);
+                inFlight.release();
+            }
+        }
+
+        private void add(StoredObject object) {
+            List<StoredObject> full = null;
+            synchronized (batch) {
+                batch.add(object);
+                if (batch.size() >= batchSize) {
+                    full = new ArrayList<>(batch);
+                    batch.clear();
+                }
+            }
+            if (full != null) {
+                record(full);
+            }
+        }
+
+        /**
+         * Wait for the entries in flight and record the last batch
+         */
+        void finish() throws InterruptedException {
+            inFlight.acquire(concurrency);
+            inFlight.release(concurrency);
+            List<StoredObject> rest;
+            synchronized (batch) {
+                rest = new ArrayList<>(batch);
+                batch.clear();
+            }
+            if (!rest.isEmpty()) {
+                record(rest);
+            }
+        }
+
+        private void record(List<StoredObject> objects) {
+            try {
+                storageService.recordObjects(objects);
+                job.getRecorded().addAndGet(objects.size());
+            } catch (Exception e) {
+                // Stored, but unknown to the application and not queued for thumbnails
+                log.error("Import {} could not record {} stored objects", job.getId(), objects.size(), e);
+                objects.forEach(object -> job.failed(object.getKey(), e));
+            }
+        }
+
+        private void discard(Entry entry) {
+            if (entry.spoolFile() != null) {
+                try {
+                    Files.deleteIfExists(entry.spoolFile());
+                } catch (IOException e) {
+                    log.warn("Could not delete spool file {}: {}", entry.spoolFile(), e.getMessage());
+                }
+            }
+        }
+    }
+}
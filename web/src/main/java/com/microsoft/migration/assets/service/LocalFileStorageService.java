@@ -2,10 +2,16 @@ package com.microsoft.migration.assets.service;
 
 import com.microsoft.migration.assets.model.ImageProcessingMessage;
 import com.microsoft.migration.assets.model.S3StorageItem;
+import com.microsoft.migration.assets.model.S3StoragePage;
+import com.microsoft.migration.assets.model.StorageObjectInfo;
+import com.microsoft.migration.assets.model.StoredObject;
+import io.micrometer.core.annotation.Timed;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
@@ -13,13 +19,24 @@ import org.springframework.web.multipart.MultipartFile;
 
 import jakarta.annotation.PostConstruct;
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-import static com.microsoft.migration.assets.config.RabbitConfig.QUEUE_NAME;
+import static com.microsoft.migration.assets.config.CacheConfig.ITEMS_CACHE;
+import static com.microsoft.migration.assets.config.CacheConfig.LISTINGS_CACHE;
+import static com.microsoft.migration.assets.config.CacheConfig.OBJECT_INFO_CACHE;
+import static com.microsoft.migration.assets.config.RabbitConfig.IMAGE_PROCESSING_EXCHANGE;
 
 @Service
 @Profile("dev") // Only active when dev profile is active
@@ -27,15 +44,15 @@ public class LocalFileStorageService implements StorageService {
 
     private static final Logger logger = LoggerFactory.getLogger(LocalFileStorageService.class);
     
-    private final RabbitTemplate rabbitTemplate;
+    private final MessageOutbox messageOutbox;
     
     @Value("${local.storage.directory:../storage}")
     private String storageDirectory;
     
     private Path rootLocation;
 
-    public LocalFileStorageService(RabbitTemplate rabbitTemplate) {
-        this.rabbitTemplate = rabbitTemplate;
+    public LocalFileStorageService(MessageOutbox messageOutbox) {
+        this.messageOutbox = messageOutbox;
     }
     
     @PostConstruct
@@ -51,27 +68,17 @@ public class LocalFileStorageService implements StorageService {
     }
 
     @Override
+    @Cacheable(LISTINGS_CACHE)
+    @Timed(STORAGE_TIMER)
     public List<S3StorageItem> listObjects() {
-        try {
-            return Files.walk(rootLocation, 1)
+        try (Stream<Path> paths = Files.walk(rootLocation, 1)) {
+            List<Path> files = paths
                 .filter(path -> !path.equals(rootLocation))
-                .map(path -> {
-                    try {
-                        String filename = path.getFileName().toString();
-                        BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
-                        return new S3StorageItem(
-                            filename,
-                            filename,
-                            Files.size(path),
-                            attrs.lastModifiedTime().toInstant(),
-                            attrs.creationTime().toInstant(),
-                            generateUrl(filename)
-                        );
-                    } catch (IOException e) {
-                        logger.error("Failed to read file attributes", e);
-                        return null;
-                    }
-                })
+                .collect(Collectors.toList());
+            Set<String> filenames = filenames(files);
+            return files.stream()
+                .filter(path -> !isThumbnailVariant(path.getFileName().toString(), filenames::contains))
+                .map(this::toStorageItem)
                 .filter(s3StorageItem -> s3StorageItem != null)
                 .collect(Collectors.toList());
         } catch (IOException e) {
@@ -81,31 +88,180 @@ public class LocalFileStorageService implements StorageService {
     }
 
     @Override
+    @Cacheable(value = LISTINGS_CACHE, key = "#cursor + ':' + #pageSize")
+    @Timed(STORAGE_TIMER)
+    public S3StoragePage listObjects(String cursor, int pageSize) {
+        // Files are paged in filename order; the cursor is the last filename of the previous page.
+        // One pass over the directory keeps the pageSize + 1 smallest names after the cursor in a
+        // max-heap, so a page costs O(n log pageSize) whichever page it is. Other renditions and
+        // formats of the thumbnails are left out before paging.
+        int limit = pageSize + 1;
+        PriorityQueue<String> smallest = new PriorityQueue<>(limit, Comparator.reverseOrder());
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(rootLocation)) {
+            for (Path path : paths) {
+                String filename = path.getFileName().toString();
+                if (StringUtils.hasText(cursor) && filename.compareTo(cursor) <= 0) {
+                    continue;
+                }
+                if (smallest.size() == limit && filename.compareTo(smallest.peek()) >= 0) {
+                    continue;
+                }
+                if (isThumbnailVariant(filename, name -> Files.exists(rootLocation.resolve(name)))) {
+                    continue;
+                }
+                smallest.offer(filename);
+                if (smallest.size() > limit) {
+                    smallest.poll();
+                }
+            }
+
+            List<String> page = new ArrayList<>(smallest);
+            page.sort(Comparator.naturalOrder());
+            boolean hasMore = page.size() > pageSize;
+            List<String> pageFilenames = hasMore ? page.subList(0, pageSize) : page;
+            List<S3StorageItem> items = pageFilenames.stream()
+                .map(filename -> toStorageItem(rootLocation.resolve(filename)))
+                .filter(s3StorageItem -> s3StorageItem != null)
+                .collect(Collectors.toList());
+            String nextCursor = hasMore ? pageFilenames.get(pageFilenames.size() - 1) : null;
+            return new S3StoragePage(items, nextCursor);
+        } catch (IOException e) {
+            logger.error("Failed to list files", e);
+            return new S3StoragePage(new ArrayList<>(), null);
+        }
+    }
+
+    @Override
+    @Cacheable(value = ITEMS_CACHE, unless = "#result == null")
+    public Optional<S3StorageItem> findObject(String key) {
+        // A single attribute read; a missing file is reported as empty
+        return Optional.ofNullable(toStorageItem(rootLocation.resolve(key)));
+    }
+
+    private static Set<String> filenames(List<Path> paths) {
+        return paths.stream()
+            .map(path -> path.getFileName().toString())
+            .collect(Collectors.toSet());
+    }
+
+    private S3StorageItem toStorageItem(Path path) {
+        try {
+            String filename = path.getFileName().toString();
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            return new S3StorageItem(
+                filename,
+                filename,
+                attrs.size(),
+                attrs.lastModifiedTime().toInstant(),
+                attrs.creationTime().toInstant(),
+                generateUrl(filename)
+            );
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            logger.error("Failed to read file attributes", e);
+            return null;
+        }
+    }
+
+    @Override
+    @Caching(evict = {
+            @CacheEvict(value = LISTINGS_CACHE, allEntries = true),
+            @CacheEvict(value = OBJECT_INFO_CACHE, allEntries = true), // files may be overwritten in place
+            @CacheEvict(value = ITEMS_CACHE, allEntries = true)
+    })
+    @Timed(STORAGE_TIMER)
     public void uploadObject(MultipartFile file) throws IOException {
         if (file.isEmpty()) {
             throw new IOException("Failed to store empty file");
         }
-        
-        String filename = StringUtils.cleanPath(file.getOriginalFilename());
+
+        try (InputStream inputStream = file.getInputStream()) {
+            uploadObject(file.getOriginalFilename(), file.getContentType(), inputStream);
+        }
+    }
+
+    @Override
+    @Caching(evict = {
+            @CacheEvict(value = LISTINGS_CACHE, allEntries = true),
+            @CacheEvict(value = OBJECT_INFO_CACHE, allEntries = true), // files may be overwritten in place
+            @CacheEvict(value = ITEMS_CACHE, allEntries = true)
+    })
+    @Timed(STORAGE_TIMER)
+    public String uploadObject(String filename, String contentType, InputStream inputStream) throws IOException {
+        StoredObject object = storeObject(filename, contentType, inputStream, -1);
+        recordObjects(List.of(object));
+        return object.getKey();
+    }
+
+    @Override
+    @Timed(STORAGE_TIMER)
+    public StoredObject storeObject(String filename, String contentType, InputStream inputStream, long contentLength)
+            throws IOException {
+        filename = StringUtils.cleanPath(filename);
         if (filename.contains("..")) {
             throw new IOException("Cannot store file with relative path outside current directory");
         }
-        
-        Path targetLocation = rootLocation.resolve(filename);
-        Files.copy(file.getInputStream(), targetLocation, StandardCopyOption.REPLACE_EXISTING);
+        // Absolute names would resolve to themselves
+        if (!rootLocation.resolve(filename).normalize().startsWith(rootLocation)) {
+            throw new IOException("Cannot store file outside the storage directory: " + filename);
+        }
+
+        // An existing file is never replaced: the key becomes name-1.ext, name-2.ext, ... instead.
+        // The file is created before any content is read, so a taken name costs nothing.
+        DigestInputStream hashingStream = StorageService.hashing(inputStream);
+        String key = filename;
+        Path targetLocation;
+        long size;
+        for (int attempt = 1; ; attempt++) {
+            targetLocation = rootLocation.resolve(key);
+            try {
+                size = Files.copy(hashingStream, targetLocation);
+                break;
+            } catch (FileAlreadyExistsException e) {
+                key = withSuffix(filename, attempt);
+            } catch (IOException e) {
+                Files.deleteIfExists(targetLocation); // partly written, e.g. the upload exceeded its size limit
+                throw e;
+            }
+        }
+        if (size == 0) {
+            Files.deleteIfExists(targetLocation);
+            throw new IOException("Failed to store empty file");
+        }
         logger.info("Stored file: {}", targetLocation);
+        return new StoredObject(key, filename, contentType, size, StorageService.contentHash(hashingStream));
+    }
 
-        // Send message to queue for thumbnail generation
-        ImageProcessingMessage message = new ImageProcessingMessage(
-            filename,
-            file.getContentType(),
-            getStorageType(),
-            file.getSize()
-        );
-        rabbitTemplate.convertAndSend(QUEUE_NAME, message);
+    private static String withSuffix(String filename, int suffix) {
+        int dotIndex = filename.lastIndexOf('.');
+        return dotIndex > filename.lastIndexOf('/') + 1
+            ? filename.substring(0, dotIndex) + "-" + suffix + filename.substring(dotIndex)
+            : filename + "-" + suffix;
+    }
+
+    @Override
+    @Caching(evict = {
+            @CacheEvict(value = LISTINGS_CACHE, allEntries = true),
+            @CacheEvict(value = OBJECT_INFO_CACHE, allEntries = true), // files may be overwritten in place
+            @CacheEvict(value = ITEMS_CACHE, allEntries = true)
+    })
+    public void recordObjects(List<StoredObject> objects) {
+        // No metadata is kept for local files, only send messages to queue for thumbnail generation
+        List<ImageProcessingMessage> messages = objects.stream()
+            .map(object -> new ImageProcessingMessage(
+                object.getKey(),
+                object.getContentType(),
+                getStorageType(),
+                object.getSize(),
+                object.getContentHash()
+            ))
+            .toList();
+        messageOutbox.enqueueAll(IMAGE_PROCESSING_EXCHANGE, getStorageType(), messages);
     }
 
     @Override
+    @Timed(STORAGE_TIMER)
     public InputStream getObject(String key) throws IOException {
         Path file = rootLocation.resolve(key);
         if (!Files.exists(file)) {
@@ -115,6 +271,52 @@ public class LocalFileStorageService implements StorageService {
     }
 
     @Override
+    @Timed(STORAGE_TIMER)
+    public InputStream getObject(String key, long start, long end) throws IOException {
+        Path file = rootLocation.resolve(key);
+        if (!Files.exists(file)) {
+            throw new FileNotFoundException("File not found: " + key);
+        }
+        // Positioned read: only the requested range is read from disk
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ).position(start);
+        return new BufferedInputStream(new RangeInputStream(Channels.newInputStream(channel), end - start + 1));
+    }
+
+    @Override
+    @Cacheable(OBJECT_INFO_CACHE)
+    public StorageObjectInfo getObjectInfo(String key) throws IOException {
+        Path file = rootLocation.resolve(key);
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            throw new FileNotFoundException("File not found: " + key);
+        }
+
+        // Files can be overwritten in place, so the validator follows size and modification time
+        long lastModified = attrs.lastModifiedTime().toMillis();
+        String eTag = "\"" + Long.toHexString(attrs.size()) + "-" + Long.toHexString(lastModified) + "\"";
+        return new StorageObjectInfo(
+            key,
+            attrs.size(),
+            Files.probeContentType(file),
+            eTag,
+            attrs.lastModifiedTime().toInstant()
+        );
+    }
+
+    @Override
+    public Optional<Path> getLocalFile(String key) {
+        Path file = rootLocation.resolve(key);
+        return Files.isRegularFile(file) ? Optional.of(file) : Optional.empty();
+    }
+
+    @Override
+    @Caching(evict = {
+            @CacheEvict(value = LISTINGS_CACHE, allEntries = true),
+            @CacheEvict(value = OBJECT_INFO_CACHE, allEntries = true), // renditions and encodings are cached under keys of their own
+            @CacheEvict(value = ITEMS_CACHE, allEntries = true)
+    })
     public void deleteObject(String key) throws IOException {
         // Delete both original and thumbnail if it exists
         Path file = rootLocation.resolve(key);
@@ -135,6 +337,41 @@ public class LocalFileStorageService implements StorageService {
             // Ignore if thumbnail doesn't exist or can't be deleted
             logger.warn("Could not delete thumbnail for {}: {}", key, e.getMessage());
         }
+
+        // Delete the other thumbnail renditions and encodings (<name>_thumbnail[_<size>]<ext>)
+        String thumbnailKey = getThumbnailKey(key);
+        int dotIndex = thumbnailKey.lastIndexOf('.');
+        String prefix = dotIndex > 0 ? thumbnailKey.substring(0, dotIndex) : thumbnailKey;
+        List<String> extensions = new ArrayList<>(THUMBNAIL_FORMAT_EXTENSIONS);
+        extensions.add(dotIndex > 0 ? thumbnailKey.substring(dotIndex) : "");
+        Path directory = rootLocation.resolve(thumbnailKey).getParent();
+        String prefixName = rootLocation.resolve(prefix).getFileName().toString();
+        try (Stream<Path> siblings = Files.list(directory)) {
+            siblings.filter(path -> isRendition(path.getFileName().toString(), prefixName, extensions))
+                    .forEach(path -> {
+                        try {
+                            Files.deleteIfExists(path);
+                        } catch (IOException e) {
+                            logger.warn("Could not delete thumbnail rendition {}: {}", path, e.getMessage());
+                        }
+                    });
+        }
+    }
+
+    private boolean isRendition(String name, String prefix, List<String> extensions) {
+        if (!name.startsWith(prefix)) {
+            return false;
+        }
+        for (String extension : extensions) {
+            if (name.endsWith(extension) && name.length() >= prefix.length() + extension.length()) {
+                String size = name.substring(prefix.length(), name.length() - extension.length());
+                if (size.isEmpty() || size.length() > 1 && size.charAt(0) == '_'
+                        && size.substring(1).chars().allMatch(Character::isDigit)) {
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 
     @Override
@@ -146,4 +383,40 @@ public class LocalFileStorageService implements StorageService {
         // Generate a URL for the object (simplified path)
         return "/s3/view/" + key;
     }
+
+    /**
+     * Stream that ends after a fixed number of bytes of the underlying stream.
+     */
+    private static class RangeInputStream extends FilterInputStream {
+        private long remaining;
+
+        RangeInputStream(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = super.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+    }
 }
\ No newline at end of file
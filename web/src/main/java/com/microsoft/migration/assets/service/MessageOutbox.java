@@ -0,0 +1,69 @@
+package com.microsoft.migration.assets.service;
+
+import com.microsoft.migration.assets.model.OutboxEvent;
+import com.microsoft.migration.assets.repository.OutboxEventRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Transactional outbox: messages are stored with the data they announce and published by the
+ * {@link OutboxRelay} after the transaction committed, so a message is sent if and only if its
+ * data was saved, and publishing costs the request no broker round trip.
+ */
+@Component
+@RequiredArgsConstructor
+public class MessageOutbox {
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final RabbitTemplate rabbitTemplate;
+    private final OutboxRelay outboxRelay;
+
+    /**
+     * Store a message for publishing, in the caller's transaction or a new one
+     */
+    @Transactional
+    public void enqueue(String exchange, String routingKey, Object payload) {
+        enqueueAll(exchange, routingKey, List.of(payload));
+    }
+
+    /**
+     * Store many messages at once, e.g. for a bulk import. The rows are inserted in JDBC batches
+     * and the relay publishes them in batches confirmed by the broker as a whole.
+     */
+    @Transactional
+    public void enqueueAll(String exchange, String routingKey, Collection<?> payloads) {
+        MessageConverter converter = rabbitTemplate.getMessageConverter();
+        List<OutboxEvent> events = new ArrayList<>(payloads.size());
+        for (Object payload : payloads) {
+            Message message = converter.toMessage(payload, new MessageProperties());
+
+            OutboxEvent event = new OutboxEvent();
+            event.setExchange(exchange);
+            event.setRoutingKey(routingKey);
+            event.setContentType(message.getMessageProperties().getContentType());
+            event.getHeaders().putAll(message.getMessageProperties().getHeaders());
+            event.setPayload(message.getBody());
+            events.add(event);
+        }
+        outboxEventRepository.saveAll(events);
+
+        // Publish right after the commit instead of waiting for the next poll
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                outboxRelay.trigger();
+            }
+        });
+    }
+}
@@ -0,0 +1,120 @@
+package com.microsoft.migration.assets.service;
+
+import com.microsoft.migration.assets.model.OutboxEvent;
+import com.microsoft.migration.assets.repository.OutboxEventRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Publishes outbox events in batches: each batch is locked, sent on one channel, confirmed by the
+ * broker as a whole and deleted in the same transaction. A failure rolls the batch back and it is
+ * sent again, so consumers may see a message twice (the worker skips completed images) but never miss one.
+ * Runs right after each outbox commit, coalescing commits that arrive while a batch is in flight,
+ * and on a slow poll for events left behind by a failure or another instance.
+ */
+@Slf4j
+@Component
+public class OutboxRelay {
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final RabbitTemplate rabbitTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter published;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("outbox-relay-"));
+    private final AtomicBoolean pending = new AtomicBoolean();
+
+    @Value("${outbox.relay.batch-size:100}")
+    private int batchSize;
+
+    @Value("${outbox.relay.confirm-timeout:10s}")
+    private Duration confirmTimeout;
+
+    public OutboxRelay(OutboxEventRepository outboxEventRepository, RabbitTemplate rabbitTemplate,
+                       TransactionTemplate transactionTemplate, MeterRegistry meterRegistry) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.rabbitTemplate = rabbitTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.published = Counter.builder("outbox.published")
+                .description("Outbox events published and confirmed by the broker")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Relay outstanding events soon, on the relay thread
+     */
+    public void trigger() {
+        if (pending.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                pending.set(false); // shutting down, the next start relays what is left
+            }
+        }
+    }
+
+    @Scheduled(initialDelayString = "${outbox.relay.poll-interval:5s}", fixedDelayString = "${outbox.relay.poll-interval:5s}")
+    public void poll() {
+        trigger();
+    }
+
+    private void drain() {
+        pending.set(false); // events committed from now on trigger another drain
+        try {
+            while (publishBatch() == batchSize) {
+                // a full batch, there may be more
+            }
+        } catch (Exception e) {
+            log.warn("Could not relay outbox events, retrying with the next poll: {}", e.getMessage());
+        }
+    }
+
+    private int publishBatch() {
+        Integer count = transactionTemplate.execute(status -> {
+            List<OutboxEvent> events = outboxEventRepository.lockNextBatch(batchSize);
+            if (events.isEmpty()) {
+                return 0;
+            }
+            rabbitTemplate.invoke(operations -> {
+                for (OutboxEvent event : events) {
+                    operations.send(event.getExchange(), event.getRoutingKey(), toMessage(event));
+                }
+                operations.waitForConfirmsOrDie(confirmTimeout.toMillis());
+                return null;
+            });
+            outboxEventRepository.deleteAllInBatch(events);
+            return events.size();
+        });
+        published.increment(count);
+        log.debug("Relayed {} outbox events", count);
+        return count;
+    }
+
+    private static Message toMessage(OutboxEvent event) {
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(event.getContentType());
+        event.getHeaders().forEach(properties::setHeader);
+        return new Message(event.getPayload(), properties);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
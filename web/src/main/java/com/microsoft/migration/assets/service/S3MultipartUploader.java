@@ -0,0 +1,234 @@
+package com.microsoft.migration.assets.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Uploads content to S3, switching to a parallel multipart upload for objects above a threshold.
+ * Parts are read from the stream into a bounded set of buffers and uploaded concurrently on a
+ * shared worker pool; each part is retried on its own and the whole upload is aborted on failure.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@Profile("!dev")
+public class S3MultipartUploader {
+
+    private static final long MIN_PART_SIZE = DataSize.ofMegabytes(5).toBytes(); // S3 minimum for all but the last part
+    private static final long RETRY_BACKOFF_MS = 200;
+
+    private final S3Client s3Client;
+
+    @Value("${aws.s3.multipart.threshold:16MB}")
+    private DataSize threshold;
+
+    @Value("${aws.s3.multipart.part-size:8MB}")
+    private DataSize partSize;
+
+    @Value("${aws.s3.multipart.concurrency:4}")
+    private int concurrency; // parts in flight (and buffers held) per upload
+
+    @Value("${aws.s3.multipart.max-threads:16}")
+    private int maxThreads; // part upload threads shared by all uploads
+
+    @Value("${aws.s3.multipart.part-attempts:3}")
+    private int partAttempts;
+
+    private ExecutorService partExecutor;
+
+    @PostConstruct
+    public void init() {
+        partExecutor = Executors.newFixedThreadPool(maxThreads, new CustomizableThreadFactory("s3-part-"));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        partExecutor.shutdownNow();
+    }
+
+    /**
+     * Upload a stream of unknown length and return the number of bytes written.
+     */
+    public long upload(String bucket, String key, String contentType, InputStream inputStream) throws IOException {
+        return upload(bucket, key, contentType, inputStream, -1);
+    }
+
+    /**
+     * Upload the stream under the given key and return the number of bytes written.
+     * Content at or below the threshold is sent with a single putObject; pass a negative
+     * content length when it is not known up front.
+     */
+    public long upload(String bucket, String key, String contentType, InputStream inputStream, long contentLength)
+            throws IOException {
+        if (contentLength >= 0 && contentLength <= threshold.toBytes()) {
+            s3Client.putObject(putRequest(bucket, key, contentType), RequestBody.fromInputStream(inputStream, contentLength));
+            return contentLength;
+        }
+
+        int bufferSize = (int) Math.max(partSize.toBytes(), MIN_PART_SIZE);
+        byte[] firstBuffer = new byte[bufferSize];
+        int read = inputStream.readNBytes(firstBuffer, 0, bufferSize);
+        if (read < bufferSize) {
+            // Everything fits into a single part
+            s3Client.putObject(putRequest(bucket, key, contentType), partBody(firstBuffer, read));
+            return read;
+        }
+
+        CreateMultipartUploadRequest createRequest = CreateMultipartUploadRequest.builder()
+                .bucket(bucket)
+                .key(key)
+                .contentType(contentType)
+                .build();
+        String uploadId = s3Client.createMultipartUpload(createRequest).uploadId();
+
+        // Free buffers; taking one blocks the reader until a part in flight has completed
+        BlockingQueue<byte[]> freeBuffers = new ArrayBlockingQueue<>(Math.max(concurrency, 1));
+        int allocatedBuffers = 1;
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<CompletableFuture<CompletedPart>> parts = new ArrayList<>();
+
+        try {
+            byte[] buffer = firstBuffer;
+            long total = 0;
+            int partNumber = 1;
+            while (read > 0 && failure.get() == null) {
+                parts.add(submitPart(bucket, key, uploadId, partNumber, buffer, read, freeBuffers, failure));
+                total += read;
+                partNumber++;
+
+                buffer = freeBuffers.poll();
+                if (buffer == null && allocatedBuffers < Math.max(concurrency, 1)) {
+                    buffer = new byte[bufferSize];
+                    allocatedBuffers++;
+                } else if (buffer == null) {
+                    buffer = freeBuffers.take();
+                }
+                read = inputStream.readNBytes(buffer, 0, bufferSize);
+            }
+
+            List<CompletedPart> completedParts = new ArrayList<>(parts.size());
+            for (CompletableFuture<CompletedPart> part : parts) {
+                completedParts.add(part.join());
+            }
+
+            CompleteMultipartUploadRequest completeRequest = CompleteMultipartUploadRequest.builder()
+                    .bucket(bucket)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(completedParts).build())
+                    .build();
+            s3Client.completeMultipartUpload(completeRequest);
+            log.debug("Completed multipart upload of {} in {} parts ({} bytes)", key, completedParts.size(), total);
+            return total;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abort(bucket, key, uploadId, parts);
+            throw new InterruptedIOException("Interrupted while uploading " + key);
+        } catch (CompletionException e) {
+            abort(bucket, key, uploadId, parts);
+            throw new IOException("Failed to upload part of " + key, e.getCause());
+        } catch (IOException | RuntimeException e) {
+            abort(bucket, key, uploadId, parts);
+            throw e;
+        }
+    }
+
+    private CompletableFuture<CompletedPart> submitPart(String bucket, String key, String uploadId, int partNumber,
+                                                        byte[] buffer, int length, BlockingQueue<byte[]> freeBuffers,
+                                                        AtomicReference<Throwable> failure) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return uploadPartWithRetry(bucket, key, uploadId, partNumber, buffer, length);
+            } catch (RuntimeException e) {
+                failure.compareAndSet(null, e);
+                throw e;
+            } finally {
+                freeBuffers.offer(buffer);
+            }
+        }, partExecutor);
+    }
+
+    private CompletedPart uploadPartWithRetry(String bucket, String key, String uploadId, int partNumber,
+                                              byte[] buffer, int length) {
+        UploadPartRequest partRequest = UploadPartRequest.builder()
+                .bucket(bucket)
+                .key(key)
+                .uploadId(uploadId)
+                .partNumber(partNumber)
+                .contentLength((long) length)
+                .build();
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                UploadPartResponse partResponse = s3Client.uploadPart(partRequest, partBody(buffer, length));
+                return CompletedPart.builder()
+                        .partNumber(partNumber)
+                        .eTag(partResponse.eTag())
+                        .build();
+            } catch (SdkException e) {
+                if (attempt >= partAttempts) {
+                    throw e;
+                }
+                log.warn("Retrying part {} of {} (attempt {} failed): {}", partNumber, key, attempt, e.getMessage());
+                try {
+                    Thread.sleep(RETRY_BACKOFF_MS << (attempt - 1));
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private PutObjectRequest putRequest(String bucket, String key, String contentType) {
+        return PutObjectRequest.builder()
+                .bucket(bucket)
+                .key(key)
+                .contentType(contentType)
+                .build();
+    }
+
+    private RequestBody partBody(byte[] buffer, int length) {
+        // Hand out a fresh stream per attempt so retries can re-read the part
+        return RequestBody.fromContentProvider(
+                () -> new ByteArrayInputStream(buffer, 0, length), length, "application/octet-stream");
+    }
+
+    private void abort(String bucket, String key, String uploadId, List<CompletableFuture<CompletedPart>> parts) {
+        parts.forEach(part -> part.cancel(true));
+        try {
+            s3Client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(bucket)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .build());
+        } catch (Exception e) {
+            log.warn("Could not abort multipart upload {} for {}: {}", uploadId, key, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.microsoft.migration.assets.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignRequest;
+
+import java.time.Duration;
+
+/**
+ * Hands out short-lived presigned GET URLs so that browsers can fetch objects
+ * from private buckets directly. Signed URLs are cached and reused until
+ * shortly before they expire.
+ */
+@Component
+@RequiredArgsConstructor
+@Profile("!dev")
+public class S3PresignedUrlProvider {
+
+    private final S3Presigner s3Presigner;
+
+    @Value("${aws.s3.bucket}")
+    private String bucketName;
+
+    @Value("${aws.s3.presigned-urls.ttl:15m}")
+    private Duration ttl;
+
+    @Value("${aws.s3.presigned-urls.refresh-before-expiry:2m}")
+    private Duration refreshBeforeExpiry;
+
+    @Value("${aws.s3.presigned-urls.cache-size:10000}")
+    private long cacheSize;
+
+    private Cache<String, String> urlCache;
+
+    @PostConstruct
+    public void init() {
+        // Evict entries early so that a cached URL always has some validity left when handed out
+        Duration reuseFor = ttl.minus(refreshBeforeExpiry);
+        urlCache = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(reuseFor.isNegative() || reuseFor.isZero() ? ttl : reuseFor)
+                .build();
+    }
+
+    /**
+     * Get a presigned GET URL for the given key
+     */
+    public String getUrl(String key) {
+        return urlCache.get(key, this::presign);
+    }
+
+    /**
+     * Drop the cached URL for a key, e.g. after the object was deleted
+     */
+    public void evict(String key) {
+        urlCache.invalidate(key);
+    }
+
+    private String presign(String key) {
+        GetObjectRequest getObjectRequest = GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .build();
+        GetObjectPresignRequest presignRequest = GetObjectPresignRequest.builder()
+                .signatureDuration(ttl)
+                .getObjectRequest(getObjectRequest)
+                .build();
+        return s3Presigner.presignGetObject(presignRequest).url().toString();
+    }
+}
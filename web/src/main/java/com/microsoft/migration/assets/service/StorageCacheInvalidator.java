@@ -0,0 +1,51 @@
+package com.microsoft.migration.assets.service;
+
+import com.microsoft.migration.assets.model.ThumbnailCompletedMessage;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.ExchangeTypes;
+import org.springframework.amqp.rabbit.annotation.Exchange;
+import org.springframework.amqp.rabbit.annotation.Queue;
+import org.springframework.amqp.rabbit.annotation.QueueBinding;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+
+import static com.microsoft.migration.assets.config.CacheConfig.ITEMS_CACHE;
+import static com.microsoft.migration.assets.config.CacheConfig.LISTINGS_CACHE;
+import static com.microsoft.migration.assets.config.CacheConfig.OBJECT_INFO_CACHE;
+import static com.microsoft.migration.assets.config.RabbitConfig.IMAGE_EVENTS_EXCHANGE;
+
+/**
+ * Evicts cached listings when the worker reports a finished thumbnail.
+ * Every web instance binds its own temporary queue to the fanout exchange, so all of them see each event.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class StorageCacheInvalidator {
+
+    private final CacheManager cacheManager;
+
+    @RabbitListener(bindings = @QueueBinding(
+            value = @Queue, // anonymous, exclusive and auto-delete
+            exchange = @Exchange(value = IMAGE_EVENTS_EXCHANGE, type = ExchangeTypes.FANOUT)),
+            ackMode = "AUTO")
+    public void onThumbnailCompleted(ThumbnailCompletedMessage message) {
+        log.debug("Thumbnail completed for {}, evicting cached listings", message.getKey());
+
+        Cache listings = cacheManager.getCache(LISTINGS_CACHE);
+        if (listings != null) {
+            listings.clear();
+        }
+        Cache objectInfo = cacheManager.getCache(OBJECT_INFO_CACHE);
+        if (objectInfo != null) {
+            objectInfo.evict(message.getThumbnailKey());
+        }
+        Cache items = cacheManager.getCache(ITEMS_CACHE);
+        if (items != null) {
+            items.evict(message.getThumbnailKey());
+        }
+    }
+}
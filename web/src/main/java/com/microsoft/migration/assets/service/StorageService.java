@@ -1,33 +1,116 @@
 package com.microsoft.migration.assets.service;
 
 import com.microsoft.migration.assets.model.S3StorageItem;
+import com.microsoft.migration.assets.model.S3StoragePage;
+import com.microsoft.migration.assets.model.StorageObjectInfo;
+import com.microsoft.migration.assets.model.StoredObject;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Optional;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Interface for storage operations that can be implemented by different storage providers
  * (AWS S3, local file system, etc.)
  */
 public interface StorageService {
+
+    /**
+     * Extensions of the smaller encodings the worker may store next to each thumbnail, preferred first
+     */
+    List<String> THUMBNAIL_FORMAT_EXTENSIONS = List.of(".avif", ".webp");
+
+    /**
+     * Keys of the thumbnails the worker stores: <name>_thumbnail[_<size>][.<ext>]
+     */
+    Pattern THUMBNAIL_KEY = Pattern.compile("(.*)_thumbnail(_\\d+)?(\\.[^./]+)?");
+
+    /**
+     * Timer of the storage operations, tagged with implementation class and method
+     */
+    String STORAGE_TIMER = "assets.storage";
     
     /**
      * List all objects in storage
      */
     List<S3StorageItem> listObjects();
+
+    /**
+     * List one page of objects in storage, starting after the given cursor
+     * (null for the first page). The returned page carries the cursor for the next one.
+     */
+    S3StoragePage listObjects(String cursor, int pageSize);
+
+    /**
+     * Get a single object's listing entry without listing the storage, empty if it does not exist
+     */
+    Optional<S3StorageItem> findObject(String key) throws IOException;
     
     /**
      * Upload file to storage
      */
     void uploadObject(MultipartFile file) throws IOException;
+
+    /**
+     * Upload content streamed straight from the request body, without buffering the whole file.
+     * Returns the key the object was stored under.
+     */
+    String uploadObject(String filename, String contentType, InputStream inputStream) throws IOException;
+
+    /**
+     * Store content without recording it, for bulk imports that store many objects concurrently and
+     * record them in batches with {@link #recordObjects(List)}. Pass -1 as content length if unknown.
+     */
+    StoredObject storeObject(String filename, String contentType, InputStream inputStream, long contentLength)
+            throws IOException;
+
+    /**
+     * Record stored objects in one transaction: their metadata, where kept, and the messages
+     * that queue their thumbnail generation
+     */
+    void recordObjects(List<StoredObject> objects);
     
     /**
      * Get object from storage by key
      */
     InputStream getObject(String key) throws IOException;
 
+    /**
+     * Get the byte range [start, end] (inclusive) of an object from storage
+     */
+    InputStream getObject(String key, long start, long end) throws IOException;
+
+    /**
+     * Get size, content type and cache validators of an object without reading its content
+     */
+    StorageObjectInfo getObjectInfo(String key) throws IOException;
+
+    /**
+     * Get the file backing an object when the storage keeps objects on the local file system,
+     * so that it can be served with a zero-copy transfer
+     */
+    default Optional<Path> getLocalFile(String key) {
+        return Optional.empty();
+    }
+
+    /**
+     * Get a URL from which clients can download an object directly, bypassing the web tier,
+     * when the storage is configured to hand those out
+     */
+    default Optional<String> getDirectUrl(String key) {
+        return Optional.empty();
+    }
+
     /**
      * Delete object from storage by key
      */
@@ -38,6 +121,25 @@ public interface StorageService {
      */
     String getStorageType();
 
+    /**
+     * Wrap an upload stream to compute the SHA-256 of the content while it is stored. The hash is
+     * sent to the worker, which reuses the thumbnails of identical content instead of regenerating them.
+     */
+    static DigestInputStream hashing(InputStream inputStream) {
+        try {
+            return new DigestInputStream(inputStream, MessageDigest.getInstance("SHA-256"));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Hex encoded hash of everything read through a {@link #hashing(InputStream)} stream
+     */
+    static String contentHash(DigestInputStream inputStream) {
+        return HexFormat.of().formatHex(inputStream.getMessageDigest().digest());
+    }
+
     /**
      * Get the thumbnail key for a given key
      */
@@ -48,4 +150,35 @@ public interface StorageService {
         }
         return key + "_thumbnail";
     }
-}
\ No newline at end of file
+
+    /**
+     * Get the keys of the other encodings of a thumbnail, in order of preference
+     */
+    default List<String> getThumbnailFormatKeys(String thumbnailKey) {
+        int dotIndex = thumbnailKey.lastIndexOf('.');
+        String base = dotIndex > 0 ? thumbnailKey.substring(0, dotIndex) : thumbnailKey;
+        return THUMBNAIL_FORMAT_EXTENSIONS.stream()
+                .map(extension -> base + extension)
+                .filter(formatKey -> !formatKey.equals(thumbnailKey))
+                .toList();
+    }
+
+    /**
+     * Whether a listed key is one of the extra thumbnails the worker stores next to the thumbnail of an
+     * image: a rendition of another size, or the thumbnail in another format. Listings show only the
+     * originals and their thumbnail. A thumbnail whose extension is a format one is the thumbnail itself
+     * when the original has that format, which is told by the original existing.
+     */
+    default boolean isThumbnailVariant(String key, Predicate<String> exists) {
+        Matcher matcher = THUMBNAIL_KEY.matcher(key);
+        if (!matcher.matches()) {
+            return false;
+        }
+        if (matcher.group(2) != null) {
+            return true;
+        }
+        String extension = matcher.group(3);
+        return extension != null && THUMBNAIL_FORMAT_EXTENSIONS.contains(extension)
+                && !exists.test(matcher.group(1) + extension);
+    }
+}
@@ -0,0 +1,68 @@
+package com.microsoft.migration.assets.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Fails reading once more than a limit of bytes has been read, for streams whose length is not
+ * known up front (chunked request bodies, decompressed archives). Unlike a truncating stream the
+ * reader cannot mistake the cut-off content for the complete one.
+ */
+public class LimitedInputStream extends FilterInputStream {
+    private final long limit;
+    private final String description; // what is limited, for the error message
+    private long count;
+
+    public LimitedInputStream(InputStream in, long limit, String description) {
+        super(in);
+        this.limit = limit;
+        this.description = description;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) {
+            count(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n > 0) {
+            count(n);
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        count(skipped);
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false; // a reset would count the same bytes twice
+    }
+
+    private void count(long n) throws LimitExceededException {
+        count += n;
+        if (count > limit) {
+            throw new LimitExceededException(description + " exceeds the limit of " + limit + " bytes");
+        }
+    }
+
+    /**
+     * Thrown when more than the limit was read
+     */
+    public static class LimitExceededException extends IOException {
+        public LimitExceededException(String message) {
+            super(message);
+        }
+    }
+}
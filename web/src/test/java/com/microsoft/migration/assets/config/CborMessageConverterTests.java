@@ -0,0 +1,77 @@
+package com.microsoft.migration.assets.config;
+
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.microsoft.migration.assets.model.ImageProcessingMessage;
+import com.microsoft.migration.assets.model.ThumbnailCompletedMessage;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+import java.util.Map;
+
+import static com.microsoft.migration.assets.config.CborMessageConverter.SCHEMA_VERSION;
+import static com.microsoft.migration.assets.config.CborMessageConverter.SCHEMA_VERSION_HEADER;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CborMessageConverterTests {
+
+	private final CborMessageConverter converter = new CborMessageConverter();
+
+	@Test
+	void roundTripsImageProcessingMessage() {
+		ImageProcessingMessage sent = new ImageProcessingMessage("photo.jpg", "image/jpeg", "s3", 1234, "ab12");
+
+		Message message = converter.toMessage(sent, new MessageProperties());
+
+		assertThat(message.getMessageProperties().getContentType()).isEqualTo(CborMessageConverter.CONTENT_TYPE);
+		assertThat(message.getMessageProperties().getContentEncoding()).isNull();
+		assertThat((Integer) message.getMessageProperties().getHeader(SCHEMA_VERSION_HEADER)).isEqualTo(SCHEMA_VERSION);
+		assertThat(converter.fromMessage(message)).isEqualTo(sent);
+	}
+
+	@Test
+	void roundTripsThumbnailCompletedMessage() {
+		ThumbnailCompletedMessage sent = new ThumbnailCompletedMessage("photo.jpg", "photo_thumbnail.jpg", "local");
+
+		assertThat(converter.fromMessage(converter.toMessage(sent, new MessageProperties()))).isEqualTo(sent);
+	}
+
+	@Test
+	void ignoresUnknownFields() throws Exception {
+		MessageProperties properties = new MessageProperties();
+		properties.setHeader(SCHEMA_VERSION_HEADER, SCHEMA_VERSION);
+		properties.setHeader("__TypeId__", ThumbnailCompletedMessage.class.getName());
+		byte[] body = new CBORMapper().writeValueAsBytes(Map.of("key", "photo.jpg", "addedLater", 42));
+
+		Object received = converter.fromMessage(new Message(body, properties));
+
+		assertThat(received).isEqualTo(new ThumbnailCompletedMessage("photo.jpg", null, null));
+	}
+
+	@Test
+	void rejectsNewerSchemaVersion() {
+		Message message = converter.toMessage(new ThumbnailCompletedMessage("photo.jpg", "photo_thumbnail.jpg", "s3"),
+				new MessageProperties());
+		message.getMessageProperties().setHeader(SCHEMA_VERSION_HEADER, SCHEMA_VERSION + 1);
+
+		assertThatThrownBy(() -> converter.fromMessage(message))
+				.isInstanceOf(MessageConversionException.class)
+				.hasMessageContaining("schema version " + (SCHEMA_VERSION + 1));
+	}
+
+	@Test
+	void cborCodecStillReadsJsonMessages() {
+		MessageConverter messageConverter = new RabbitConfig().messageConverter("cbor");
+		ImageProcessingMessage sent = new ImageProcessingMessage("photo.jpg", "image/jpeg", "s3", 1234, null);
+
+		Message json = new Jackson2JsonMessageConverter().toMessage(sent, new MessageProperties());
+
+		assertThat(messageConverter.fromMessage(json)).isEqualTo(sent);
+		assertThat(messageConverter.toMessage(sent, new MessageProperties()).getMessageProperties().getContentType())
+				.isEqualTo(CborMessageConverter.CONTENT_TYPE);
+	}
+}
@@ -0,0 +1,86 @@
+package com.microsoft.migration.assets.controller;
+
+import com.microsoft.migration.assets.model.S3StorageItem;
+import com.microsoft.migration.assets.model.S3StoragePage;
+import com.microsoft.migration.assets.model.StorageObjectInfo;
+import com.microsoft.migration.assets.service.StorageService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Which encoding of a thumbnail the gallery and /s3/view hand out, with objects served from presigned URLs.
+ */
+@WebMvcTest(controllers = S3Controller.class, properties = "worker.thumbnail.formats=webp,avif")
+class S3ControllerTests {
+
+	private static final Instant MODIFIED = Instant.parse("2025-01-01T00:00:00Z");
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@MockitoBean
+	private StorageService storageService;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		when(storageService.getThumbnailFormatKeys(anyString())).thenCallRealMethod();
+		when(storageService.getDirectUrl(anyString()))
+				.thenAnswer(invocation -> Optional.of("https://bucket.example/" + invocation.getArgument(0) + "?signature"));
+		when(storageService.getObjectInfo("photo_thumbnail.webp"))
+				.thenReturn(new StorageObjectInfo("photo_thumbnail.webp", 100, "image/webp", "\"webp\"", MODIFIED));
+		when(storageService.getObjectInfo("photo_thumbnail.avif")).thenThrow(new IOException("not generated"));
+	}
+
+	@Test
+	void thumbnailRequestedWithWebpRedirectsToWebpEncoding() throws Exception {
+		mockMvc.perform(get("/s3/view/photo_thumbnail.jpg").header(HttpHeaders.ACCEPT, "image/webp,*/*;q=0.8"))
+				.andExpect(status().isFound())
+				.andExpect(header().string(HttpHeaders.LOCATION, "https://bucket.example/photo_thumbnail.webp?signature"))
+				.andExpect(header().string(HttpHeaders.VARY, containsString(HttpHeaders.ACCEPT)));
+	}
+
+	@Test
+	void thumbnailRequestedWithWildcardKeepsOriginalEncoding() throws Exception {
+		mockMvc.perform(get("/s3/view/photo_thumbnail.jpg").header(HttpHeaders.ACCEPT, "*/*"))
+				.andExpect(status().isFound())
+				.andExpect(header().string(HttpHeaders.LOCATION, "https://bucket.example/photo_thumbnail.jpg?signature"));
+
+		verify(storageService, never()).getObjectInfo(any());
+	}
+
+	@Test
+	void galleryLoadsThumbnailsThroughNegotiation() throws Exception {
+		when(storageService.listObjects(null, S3Controller.DEFAULT_PAGE_SIZE)).thenReturn(new S3StoragePage(List.of(
+				new S3StorageItem("photo.jpg", "photo.jpg", 1000, MODIFIED, MODIFIED, "https://bucket.example/photo.jpg?signature"),
+				new S3StorageItem("photo_thumbnail.jpg", "photo_thumbnail.jpg", 100, MODIFIED, MODIFIED,
+						"https://bucket.example/photo_thumbnail.jpg?signature")), null));
+
+		mockMvc.perform(get("/s3"))
+				.andExpect(status().isOk())
+				.andExpect(content().string(containsString("src=\"/s3/view/photo_thumbnail.jpg\"")))
+				.andExpect(content().string(containsString("src=\"https://bucket.example/photo.jpg?signature\"")))
+				.andExpect(content().string(not(containsString("src=\"https://bucket.example/photo_thumbnail.jpg"))));
+	}
+}
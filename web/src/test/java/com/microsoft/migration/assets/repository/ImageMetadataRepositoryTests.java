@@ -0,0 +1,114 @@
+package com.microsoft.migration.assets.repository;
+
+import com.microsoft.migration.assets.model.ImageMetadata;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.Hibernate;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Queries issued for image metadata, counted with Hibernate statistics against a real PostgreSQL
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class ImageMetadataRepositoryTests {
+
+	private static final EmbeddedPostgres postgres = start();
+
+	@Autowired
+	private ImageMetadataRepository repository;
+
+	@Autowired
+	private EntityManager entityManager;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	private Statistics statistics;
+
+	@DynamicPropertySource
+	static void datasource(DynamicPropertyRegistry registry) {
+		registry.add("spring.datasource.url", () -> postgres.getJdbcUrl("postgres", "postgres"));
+		registry.add("spring.datasource.username", () -> "postgres");
+		registry.add("spring.datasource.password", () -> "postgres");
+	}
+
+	@AfterAll
+	static void stop() throws IOException {
+		postgres.close();
+	}
+
+	@BeforeEach
+	void setUp() {
+		for (int i = 0; i < 5; i++) {
+			repository.save(metadata("photo-" + i + ".jpg"));
+		}
+		entityManager.flush();
+		entityManager.clear();
+		statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+	}
+
+	@Test
+	void listingPageCostsOneQuery() {
+		List<ImageMetadata> page = repository.findByS3KeyIn(
+				List.of("photo-0.jpg", "photo-1.jpg", "photo-2.jpg", "photo-3.jpg", "photo-4.jpg"));
+
+		assertThat(page).hasSize(5);
+		assertThat(page).allSatisfy(metadata -> assertThat(metadata.getUploadedAt()).isNotNull());
+		assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+	}
+
+	@Test
+	void singleLookupCostsOneQuery() {
+		assertThat(repository.findByS3Key("photo-0.jpg")).isPresent();
+
+		assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+	}
+
+	@Test
+	void renditionKeysAreFetchedAlongForDelete() {
+		ImageMetadata metadata = repository.findWithRenditionKeysByS3Key("photo-0.jpg").orElseThrow();
+
+		assertThat(Hibernate.isInitialized(metadata.getRenditionKeys())).isTrue();
+		assertThat(metadata.getRenditionKeys()).containsEntry(150, "photo-0_thumbnail_150.jpg");
+		assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+	}
+
+	private static ImageMetadata metadata(String key) {
+		ImageMetadata metadata = new ImageMetadata();
+		metadata.setId(key);
+		metadata.setS3Key(key);
+		metadata.setFilename(key);
+		metadata.setSize(100L);
+		String base = key.substring(0, key.lastIndexOf('.'));
+		metadata.setThumbnailKey(base + "_thumbnail.jpg");
+		metadata.setRenditionKeys(Map.of(150, base + "_thumbnail_150.jpg", 1200, base + "_thumbnail.jpg"));
+		return metadata;
+	}
+
+	private static EmbeddedPostgres start() {
+		try {
+			return EmbeddedPostgres.start();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
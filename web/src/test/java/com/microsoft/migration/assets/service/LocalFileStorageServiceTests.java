@@ -0,0 +1,69 @@
+package com.microsoft.migration.assets.service;
+
+import com.microsoft.migration.assets.model.S3StorageItem;
+import com.microsoft.migration.assets.model.S3StoragePage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Paging of the local storage directory in filename order, without the extra thumbnails.
+ */
+class LocalFileStorageServiceTests {
+
+	@TempDir
+	Path directory;
+
+	private LocalFileStorageService storageService;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		storageService = new LocalFileStorageService(mock(MessageOutbox.class));
+		ReflectionTestUtils.setField(storageService, "storageDirectory", directory.toString());
+		storageService.init();
+	}
+
+	@Test
+	void pagesFollowFilenameOrder() throws IOException {
+		for (String name : List.of("e.jpg", "b.jpg", "g.jpg", "a.jpg", "f.jpg", "c.jpg", "d.jpg")) {
+			Files.writeString(directory.resolve(name), name);
+		}
+
+		List<List<String>> pages = new ArrayList<>();
+		String cursor = null;
+		do {
+			S3StoragePage page = storageService.listObjects(cursor, 3);
+			pages.add(page.getItems().stream().map(S3StorageItem::getKey).toList());
+			cursor = page.getNextCursor();
+		} while (cursor != null);
+
+		assertThat(pages).containsExactly(
+				List.of("a.jpg", "b.jpg", "c.jpg"),
+				List.of("d.jpg", "e.jpg", "f.jpg"),
+				List.of("g.jpg"));
+	}
+
+	@Test
+	void pagesLeaveOutOtherRenditionsAndFormats() throws IOException {
+		for (String name : List.of("photo.jpg", "photo_thumbnail.jpg", "photo_thumbnail_150.jpg", "photo_thumbnail.webp",
+				"photo_thumbnail.avif", "shot.webp", "shot_thumbnail.webp", "shot_thumbnail_300.webp")) {
+			Files.writeString(directory.resolve(name), name);
+		}
+
+		S3StoragePage page = storageService.listObjects(null, 10);
+
+		assertThat(page.getItems()).extracting(S3StorageItem::getKey)
+				.containsExactly("photo.jpg", "photo_thumbnail.jpg", "shot.webp", "shot_thumbnail.webp");
+		assertThat(page.getNextCursor()).isNull();
+	}
+}
@@ -0,0 +1,57 @@
+package com.microsoft.migration.assets.worker.config;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.AbstractJackson2MessageConverter;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.util.MimeType;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+/**
+ * Encodes messages as CBOR (RFC 8949): the same Jackson mapping as the JSON messages, but a
+ * binary encoding that is smaller and cheaper to write and parse. Messages carry a schema
+ * version header; receivers tolerate unknown fields, so adding one keeps the version, and
+ * reject messages of a newer version than they understand instead of misreading them.
+ * Keep in sync with the web module's copy of this class.
+ */
+public class CborMessageConverter extends AbstractJackson2MessageConverter {
+    public static final String CONTENT_TYPE = "application/cbor";
+    public static final String SCHEMA_VERSION_HEADER = "x-schema-version";
+    public static final int SCHEMA_VERSION = 1;
+
+    public CborMessageConverter() {
+        super(CBORMapper.builder()
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                .findAndAddModules()
+                .build(),
+            MimeType.valueOf(CONTENT_TYPE),
+            "*");
+    }
+
+    @Override
+    protected Message createMessage(Object object, MessageProperties messageProperties, Type genericType) {
+        messageProperties.setHeader(SCHEMA_VERSION_HEADER, SCHEMA_VERSION);
+        Message message = super.createMessage(object, messageProperties, genericType);
+        message.getMessageProperties().setContentEncoding(null); // binary, no charset
+        return message;
+    }
+
+    @Override
+    public Object fromMessage(Message message, Object conversionHint) {
+        Object version = message.getMessageProperties().getHeader(SCHEMA_VERSION_HEADER);
+        if (version instanceof Number number && number.intValue() > SCHEMA_VERSION) {
+            throw new MessageConversionException("Unsupported message schema version " + version
+                + ", this version reads up to " + SCHEMA_VERSION);
+        }
+        // The base class parses text formats from a String, so the bytes are read here
+        try {
+            return objectMapper.readValue(message.getBody(), getJavaTypeMapper().toJavaType(message.getMessageProperties()));
+        } catch (IOException e) {
+            throw new MessageConversionException("Failed to convert CBOR message", e);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.microsoft.migration.assets.worker.config;
+
+import com.microsoft.migration.assets.worker.util.BufferPool;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.unit.DataSize;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thread pools of the thumbnail pipeline: I/O-bound stages (download, upload) run on a
+ * large pool or on virtual threads, CPU-bound stages (decode, scale, encode) on a pool
+ * sized to the cores. Stage queues are unbounded: an image queues several tasks per stage (an
+ * upload or copy per rendition and format), and the listener's in-flight limit already bounds
+ * how many images have tasks queued, so a fixed capacity could only reject work it was given.
+ */
+@Configuration
+public class PipelineConfig {
+    public static final String IO_EXECUTOR = "pipelineIoExecutor";
+    public static final String CPU_EXECUTOR = "pipelineCpuExecutor";
+    public static final int MAX_BUFFER_SIZE = Integer.MAX_VALUE - 16; // largest array the JVM reliably allocates
+
+    @Value("${worker.thumbnail.renditions:150,300,600,1200}")
+    private int[] renditions;
+
+    @Value("${worker.thumbnail.in-memory-threshold:32MB}")
+    private DataSize inMemoryThreshold;
+
+    @Value("${worker.pipeline.io-threads:0}")
+    private int ioThreads; // 0 = one virtual thread per task
+
+    @Value("${worker.pipeline.cpu-threads:0}")
+    private int cpuThreads; // 0 = number of available processors
+
+    @Value("${worker.pipeline.max-in-flight:32}")
+    private int maxInFlight;
+
+    @Value("${worker.pipeline.buffer-retain-size:2MB}")
+    private DataSize bufferRetainSize; // larger buffers are dropped after use
+
+    @Value("${worker.pipeline.buffer-pool-size:64MB}")
+    private DataSize bufferPoolSize; // total of the buffers kept for reuse
+
+    @Bean(name = IO_EXECUTOR, destroyMethod = "shutdownNow")
+    public ExecutorService pipelineIoExecutor() {
+        if (ioThreads <= 0) {
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("pipeline-io-", 0).factory());
+        }
+        return new ThreadPoolExecutor(ioThreads, ioThreads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), new CustomizableThreadFactory("pipeline-io-"));
+    }
+
+    @Bean(name = CPU_EXECUTOR, destroyMethod = "shutdownNow")
+    public ExecutorService pipelineCpuExecutor() {
+        int threads = cpuThreads > 0 ? cpuThreads : Runtime.getRuntime().availableProcessors();
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), new CustomizableThreadFactory("pipeline-cpu-"));
+    }
+
+    @Bean
+    public BufferPool pipelineBufferPool() {
+        // An original and every rendition, in its own and one modern format, per image in flight
+        return new BufferPool(maxInFlight * (renditions.length * 2 + 1),
+                (int) Math.min(Math.min(bufferRetainSize.toBytes(), inMemoryThreshold.toBytes()), MAX_BUFFER_SIZE),
+                bufferPoolSize.toBytes());
+    }
+}
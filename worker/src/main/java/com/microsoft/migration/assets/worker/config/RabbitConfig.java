@@ -1,61 +1,145 @@
 package com.microsoft.migration.assets.worker.config;
 
 import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.Declarables;
+import org.springframework.amqp.core.ExchangeBuilder;
+import org.springframework.amqp.core.FanoutExchange;
+import org.springframework.amqp.core.MessageProperties;
 import org.springframework.amqp.core.Queue;
 import org.springframework.amqp.core.QueueBuilder;
+import org.springframework.amqp.core.TopicExchange;
 import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.support.converter.ContentTypeDelegatingMessageConverter;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.retry.backoff.FixedBackOffPolicy;
-import org.springframework.retry.policy.SimpleRetryPolicy;
-import org.springframework.retry.support.RetryTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
 
 @Configuration
 public class RabbitConfig {
-    public static final String QUEUE_NAME = "image-processing";
-    public static final int RETRY_DELAY_MS = 60000; // 1 minute delay
+    public static final String IMAGE_PROCESSING_EXCHANGE = "image-processing"; // topic, routed by storage type
+    public static final String LISTENER_ID = "imageProcessingListener";
+    public static final String IMAGE_EVENTS_EXCHANGE = "image-events"; // fanout for processing results
+    public static final String RETRY_ATTEMPT_HEADER = "x-retry-attempt"; // attempt number of a redelivered message
+    public static final String FAILURE_HEADER = "x-failure"; // last error of a dead-lettered message
+    public static final int RETRY_DELAY_MS = 10000; // delay before the second attempt, doubled for each further one
     public static final int MAX_ATTEMPTS = 3; // Maximum number of retry attempts
 
+    @Value("${worker.storage-type}")
+    private String storageType; // s3, or local with the dev profile
+
+    @Bean
+    public TopicExchange imageProcessingExchange() {
+        return ExchangeBuilder.topicExchange(IMAGE_PROCESSING_EXCHANGE).durable(true).build();
+    }
+
+    /**
+     * The queue of this worker's storage type. The web tier publishes with the storage type as
+     * routing key, so a worker only ever receives messages it can process.
+     */
     @Bean
     public Queue imageProcessingQueue() {
-        return QueueBuilder.durable(QUEUE_NAME).build();
+        return QueueBuilder.durable(queueName(storageType)).build();
+    }
+
+    @Bean
+    public Binding imageProcessingBinding(Queue imageProcessingQueue, TopicExchange imageProcessingExchange) {
+        return BindingBuilder.bind(imageProcessingQueue).to(imageProcessingExchange).with(storageType);
+    }
+
+    /**
+     * One retry queue per backoff step. A failed message is published to the queue of its attempt
+     * and dead-lettered back into the processing queue when its TTL expires, so no consumer holds
+     * it in the meantime. The TTL is per queue rather than per message: messages only expire at the
+     * head of a queue, and with a single TTL per queue the head is always the first to expire.
+     * Brokers without TTL dead-lettering (the load test's embedded broker) turn this off with
+     * worker.retry.broker-backoff=false; failed messages then go straight back to the processing queue.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "worker.retry.broker-backoff", havingValue = "true", matchIfMissing = true)
+    public Declarables imageRetryQueues(Queue imageProcessingQueue) {
+        List<Queue> queues = new ArrayList<>();
+        for (int attempt = 1; attempt < MAX_ATTEMPTS; attempt++) {
+            queues.add(QueueBuilder.durable(retryQueueName(imageProcessingQueue.getName(), attempt))
+                .ttl((int) retryDelayMs(attempt))
+                .deadLetterExchange("")
+                .deadLetterRoutingKey(imageProcessingQueue.getName())
+                .build());
+        }
+        return new Declarables(queues);
+    }
+
+    @Bean
+    public Queue imageDeadLetterQueue(Queue imageProcessingQueue) {
+        return QueueBuilder.durable(deadLetterQueueName(imageProcessingQueue.getName())).build();
     }
 
+    /**
+     * Processing queue of a storage type, e.g. image-processing.s3
+     */
+    public static String queueName(String storageType) {
+        return IMAGE_PROCESSING_EXCHANGE + "." + storageType;
+    }
+
+    public static String retryQueueName(String queue, int attempt) {
+        return queue + ".retry." + attempt;
+    }
+
+    /**
+     * Queue of the messages that failed every attempt
+     */
+    public static String deadLetterQueueName(String queue) {
+        return queue + ".dlq";
+    }
+
+    /**
+     * Backoff after the given failed attempt: RETRY_DELAY_MS, then doubling.
+     */
+    public static long retryDelayMs(int attempt) {
+        return (long) RETRY_DELAY_MS << (attempt - 1);
+    }
+
+    @Bean
+    public FanoutExchange imageEventsExchange() {
+        return ExchangeBuilder.fanoutExchange(IMAGE_EVENTS_EXCHANGE).durable(true).build();
+    }
+
+    /**
+     * Encodes with the codec set by messaging.codec (json or cbor) and decodes by content type,
+     * so the codec can be switched in one module at a time while messages of the other are in flight.
+     */
     @Bean
-    public MessageConverter jsonMessageConverter() {
-        return new Jackson2JsonMessageConverter();
+    public MessageConverter messageConverter(@Value("${messaging.codec:json}") String codec) {
+        Jackson2JsonMessageConverter json = new Jackson2JsonMessageConverter();
+        CborMessageConverter cbor = new CborMessageConverter();
+        ContentTypeDelegatingMessageConverter converter = new ContentTypeDelegatingMessageConverter(switch (codec) {
+            case "json" -> json;
+            case "cbor" -> cbor;
+            default -> throw new IllegalStateException("Unknown messaging.codec " + codec + ", expected json or cbor");
+        });
+        converter.addDelegate(MessageProperties.CONTENT_TYPE_JSON, json);
+        converter.addDelegate(CborMessageConverter.CONTENT_TYPE, cbor);
+        return converter;
     }
 
     @Bean
     public SimpleRabbitListenerContainerFactory rabbitListenerContainerFactory(
             ConnectionFactory connectionFactory,
-            SimpleRabbitListenerContainerFactoryConfigurer configurer) {
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            MessageConverter messageConverter) {
         SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
         configurer.configure(factory, connectionFactory);
-        factory.setMessageConverter(jsonMessageConverter());
+        factory.setMessageConverter(messageConverter);
         factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
         return factory;
     }
-    
-    @Bean
-    public RetryTemplate retryTemplate() {
-        RetryTemplate retryTemplate = new RetryTemplate();
-        
-        // Configure retry policy (number of attempts)
-        SimpleRetryPolicy retryPolicy = new SimpleRetryPolicy();
-        retryPolicy.setMaxAttempts(MAX_ATTEMPTS);
-        retryTemplate.setRetryPolicy(retryPolicy);
-        
-        // Configure backoff policy (delay between retries)
-        FixedBackOffPolicy backOffPolicy = new FixedBackOffPolicy();
-        backOffPolicy.setBackOffPeriod(RETRY_DELAY_MS);
-        retryTemplate.setBackOffPolicy(backOffPolicy);
-        
-        return retryTemplate;
-    }
-
 }
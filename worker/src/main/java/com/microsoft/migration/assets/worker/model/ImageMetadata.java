@@ -1,15 +1,29 @@
 package com.microsoft.migration.assets.worker.model;
 
+import jakarta.persistence.CollectionTable;
+import jakarta.persistence.Column;
+import jakarta.persistence.ElementCollection;
 import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.MapKeyColumn;
 import jakarta.persistence.PrePersist;
 import jakarta.persistence.PreUpdate;
+import jakarta.persistence.Table;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
 
 @Entity
+@Table(indexes = {
+    @Index(name = "idx_image_metadata_s3_key", columnList = "s3Key"),
+    @Index(name = "idx_image_metadata_content_hash", columnList = "contentHash")
+})
 @Data
 @NoArgsConstructor
 public class ImageMetadata {
@@ -22,6 +36,17 @@ public class ImageMetadata {
     private String s3Url;
     private String thumbnailKey;
     private String thumbnailUrl;
+    private String contentHash; // SHA-256 of the original, hex encoded
+    private String thumbnailSettings; // fingerprint of the settings the thumbnails were generated with
+
+    // Thumbnail key of each rendition, by maximum dimension in pixels. Loaded only by the
+    // repository methods that fetch it, so listings do not query it once per row
+    @ElementCollection(fetch = FetchType.LAZY)
+    @CollectionTable(name = "image_metadata_renditions", joinColumns = @JoinColumn(name = "image_id"))
+    @MapKeyColumn(name = "max_dimension")
+    @Column(name = "thumbnail_key")
+    private Map<Integer, String> renditionKeys = new HashMap<>();
+
     private LocalDateTime uploadedAt;
     private LocalDateTime lastModified;
 
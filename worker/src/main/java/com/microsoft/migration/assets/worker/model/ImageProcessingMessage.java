@@ -12,4 +12,5 @@ public class ImageProcessingMessage {
     private String contentType;
     private String storageType; // "s3" or "local"
     private long size;
+    private String contentHash; // SHA-256 of the original, hex encoded; null from older web versions
 }
\ No newline at end of file
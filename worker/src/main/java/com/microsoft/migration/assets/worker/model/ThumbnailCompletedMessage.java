@@ -0,0 +1,14 @@
+package com.microsoft.migration.assets.worker.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ThumbnailCompletedMessage {
+    private String key;
+    private String thumbnailKey;
+    private String storageType; // "s3" or "local"
+}
@@ -1,10 +1,32 @@
 package com.microsoft.migration.assets.worker.repository;
 
 import com.microsoft.migration.assets.worker.model.ImageMetadata;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Optional;
+
 @Repository
 public interface ImageMetadataRepository extends JpaRepository<ImageMetadata, String> {
     // Basic CRUD operations are automatically provided by JpaRepository
+
+    /**
+     * Find the metadata of an uploaded object (backed by the s3_key index), with its rendition keys
+     */
+    @EntityGraph(attributePaths = "renditionKeys")
+    Optional<ImageMetadata> findByS3Key(String s3Key);
+
+    /**
+     * Find metadata by id together with its rendition keys
+     */
+    @EntityGraph(attributePaths = "renditionKeys")
+    Optional<ImageMetadata> findWithRenditionKeysById(String id);
+
+    /**
+     * Find processed thumbnails of identical content (backed by the content_hash index), without their
+     * rendition keys: fetching them along would apply the limit in memory over all duplicates
+     */
+    Optional<ImageMetadata> findFirstByContentHashAndThumbnailSettingsAndThumbnailKeyIsNotNull(
+        String contentHash, String thumbnailSettings);
 }
\ No newline at end of file
@@ -1,213 +1,724 @@
 package com.microsoft.migration.assets.worker.service;
 
+import com.microsoft.migration.assets.worker.model.ImageMetadata;
 import com.microsoft.migration.assets.worker.model.ImageProcessingMessage;
+import com.microsoft.migration.assets.worker.model.ThumbnailCompletedMessage;
+import com.microsoft.migration.assets.worker.util.BufferPool;
+import com.microsoft.migration.assets.worker.util.Resampler;
 import com.microsoft.migration.assets.worker.util.StorageUtil;
 import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpException;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.amqp.support.AmqpHeaders;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.messaging.handler.annotation.Header;
-import org.springframework.retry.RetryCallback;
-import org.springframework.retry.RetryContext;
-import org.springframework.retry.support.RetryTemplate;
+import org.springframework.util.unit.DataSize;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.Dimension;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.BiFunction;
 
-import static com.microsoft.migration.assets.worker.config.RabbitConfig.QUEUE_NAME;
+import static com.microsoft.migration.assets.worker.config.PipelineConfig.CPU_EXECUTOR;
+import static com.microsoft.migration.assets.worker.config.PipelineConfig.IO_EXECUTOR;
+import static com.microsoft.migration.assets.worker.config.PipelineConfig.MAX_BUFFER_SIZE;
+import static com.microsoft.migration.assets.worker.config.RabbitConfig.FAILURE_HEADER;
+import static com.microsoft.migration.assets.worker.config.RabbitConfig.IMAGE_EVENTS_EXCHANGE;
+import static com.microsoft.migration.assets.worker.config.RabbitConfig.IMAGE_PROCESSING_EXCHANGE;
+import static com.microsoft.migration.assets.worker.config.RabbitConfig.LISTENER_ID;
+import static com.microsoft.migration.assets.worker.config.RabbitConfig.MAX_ATTEMPTS;
+import static com.microsoft.migration.assets.worker.config.RabbitConfig.RETRY_ATTEMPT_HEADER;
+import static com.microsoft.migration.assets.worker.config.RabbitConfig.deadLetterQueueName;
+import static com.microsoft.migration.assets.worker.config.RabbitConfig.queueName;
+import static com.microsoft.migration.assets.worker.config.RabbitConfig.retryDelayMs;
+import static com.microsoft.migration.assets.worker.config.RabbitConfig.retryQueueName;
 
 @Slf4j
 public abstract class AbstractFileProcessingService implements FileProcessor {
 
     @Autowired
-    private RetryTemplate retryTemplate;
+    private RabbitTemplate rabbitTemplate;
 
-    @RabbitListener(queues = QUEUE_NAME)
+    @Autowired
+    @Qualifier(IO_EXECUTOR)
+    private ExecutorService ioExecutor;
+
+    @Autowired
+    @Qualifier(CPU_EXECUTOR)
+    private ExecutorService cpuExecutor;
+
+    @Autowired
+    private BufferPool bufferPool;
+
+    @Autowired
+    private ThumbnailEncoders thumbnailEncoders;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private ThumbnailMetrics metrics;
+
+    @Value("${worker.pipeline.max-in-flight:32}")
+    private int maxInFlight; // upper bound of the in-flight limit the autoscaler sets
+
+    @Value("${worker.thumbnail.renditions:150,300,600,1200}")
+    private List<Integer> renditions; // max dimension of each thumbnail, in pixels
+
+    @Value("${worker.thumbnail.default-rendition:600}")
+    private int defaultRendition; // stored under the plain thumbnail key
+
+    @Value("${worker.thumbnail.resampler:mitchell}")
+    private String resampler; // mitchell, lanczos3 or legacy (Graphics2D progressive scaling)
+
+    @Value("${worker.thumbnail.sharpen:0.15}")
+    private float sharpen;
+
+    // Filter of the resize engine, null for the legacy Graphics2D path
+    private Resampler.Filter resamplingFilter;
+
+    @Value("${worker.thumbnail.in-memory-threshold:32MB}")
+    private DataSize inMemoryThreshold; // larger originals are spilled to a temp file
+
+    @Value("${worker.storage-type}")
+    private String storageType; // selects the queue, must match the profile's implementation
+
+    @Value("${worker.retry.broker-backoff:true}")
+    private boolean brokerBackoff; // false: retry without delay, for brokers without TTL dead-lettering
+
+    @Value("${worker.retry.confirm-timeout:10s}")
+    private Duration confirmTimeout; // for the broker to confirm a retry or dead-lettered message
+
+    // Permits for images between delivery and acknowledgment; bounds the queue of every stage
+    private InFlightPermits inFlight;
+    private volatile int inFlightLimit;
+
+    // Fingerprint of everything that shapes the thumbnails; only thumbnails made with the same are reused
+    private String thumbnailSettings;
+
+    @PostConstruct
+    public void initPipeline() {
+        inFlight = new InFlightPermits(maxInFlight);
+        inFlightLimit = maxInFlight;
+        if (!getStorageType().equals(storageType)) {
+            throw new IllegalStateException("worker.storage-type is " + storageType + " but the active profile stores in " + getStorageType());
+        }
+        if (renditions.isEmpty()) {
+            throw new IllegalStateException("worker.thumbnail.renditions must list at least one size");
+        }
+        if (!renditions.contains(defaultRendition)) {
+            throw new IllegalStateException("worker.thumbnail.default-rendition " + defaultRendition
+                + " is not one of worker.thumbnail.renditions " + renditions);
+        }
+        useResampler(resampler, sharpen);
+        useMeterRegistry(meterRegistry);
+        byte[] settings = ("renditions=" + renditions + ";default=" + defaultRendition + ";resampler=" + resampler
+            + ";sharpen=" + sharpen + ";" + thumbnailEncoders.describeSettings()).getBytes(StandardCharsets.UTF_8);
+        thumbnailSettings = sha256(settings, 0, settings.length).substring(0, 16);
+        Gauge.builder("worker.thumbnail.in.flight", inFlight, permits -> inFlightLimit - permits.availablePermits())
+            .description("Images between delivery and acknowledgment")
+            .register(meterRegistry);
+        Gauge.builder("worker.thumbnail.in.flight.limit", this, AbstractFileProcessingService::getInFlightLimit)
+            .description("Images this worker takes on at once")
+            .register(meterRegistry);
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public int getInFlightLimit() {
+        return inFlightLimit;
+    }
+
+    /**
+     * Change how many images may be between delivery and acknowledgment (1 to max-in-flight).
+     * Lowering it takes effect as images complete; deliveries already in the pipeline finish normally.
+     */
+    public synchronized void setInFlightLimit(int limit) {
+        int bounded = Math.max(1, Math.min(limit, maxInFlight));
+        int delta = bounded - inFlightLimit;
+        if (delta > 0) {
+            inFlight.release(delta);
+        } else if (delta < 0) {
+            inFlight.reducePermits(-delta);
+        }
+        inFlightLimit = bounded;
+    }
+
+    /**
+     * Select the resize engine: mitchell, lanczos3 or legacy (Graphics2D progressive scaling).
+     */
+    protected void useResampler(String resampler, float sharpen) {
+        this.resampler = resampler;
+        this.sharpen = sharpen;
+        resamplingFilter = "legacy".equalsIgnoreCase(resampler)
+            ? null : Resampler.Filter.valueOf(resampler.trim().toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * Register the pipeline meters with the given registry.
+     */
+    protected void useMeterRegistry(MeterRegistry registry) {
+        this.metrics = new ThumbnailMetrics(registry);
+    }
+
+    /**
+     * Hands each delivery to the staged pipeline: download and upload run on the I/O pool,
+     * thumbnail generation (all renditions) on the CPU pool. The message is acknowledged once the last stage completes.
+     * Images are passed between stages in pooled memory buffers; only originals above the
+     * in-memory threshold go through a temp file. Keys whose thumbnails are complete are
+     * acknowledged without downloading, and thumbnails of content already processed under
+     * another key (same SHA-256, same settings) are copied instead of generated. Failed attempts
+     * are retried through the broker's retry queues, which deliver the message again with the
+     * attempt number in a header. Only messages of this worker's storage type are routed here.
+     */
+    @RabbitListener(id = LISTENER_ID, queues = IMAGE_PROCESSING_EXCHANGE + ".${worker.storage-type}")
     public void processImage(final ImageProcessingMessage message, 
                            Channel channel, 
-                           @Header(AmqpHeaders.DELIVERY_TAG) long deliveryTag) {
+                           @Header(AmqpHeaders.DELIVERY_TAG) long deliveryTag,
+                           @Header(name = RETRY_ATTEMPT_HEADER, required = false) Integer attempt) throws InterruptedException {
+        // Backpressure: the consumer stops taking deliveries while the pipeline is full
+        inFlight.acquire();
+        runPipeline(new ImageJob(message, channel, deliveryTag, attempt != null ? attempt : 1));
+    }
+
+    /**
+     * Queue this worker consumes, the one its storage type is routed to
+     */
+    public String getQueueName() {
+        return queueName(getStorageType());
+    }
+
+    private void runPipeline(ImageJob job) {
+        job.startNanos = System.nanoTime();
         try {
-            retryTemplate.execute(new RetryCallback<Void, Exception>() {
-                @Override
-                public Void doWithRetry(RetryContext context) throws Exception {
-                    if (context.getRetryCount() > 0) {
-                        log.info("Retry attempt {} for image: {}", context.getRetryCount(), message.getKey());
+            CompletableFuture.runAsync(() -> lookup(job), ioExecutor)
+                .thenCompose(ignored -> job.completed ? CompletableFuture.<Void>completedFuture(null)
+                    : job.duplicateOf != null ? copy(job).exceptionallyCompose(error -> {
+                        log.warn("Could not copy thumbnails of {} for {}, generating them: {}",
+                            job.duplicateOf.getThumbnailKey(), job.message.getKey(), error.getMessage());
+                        job.duplicateOf = null;
+                        return transcode(job);
+                    })
+                    : transcode(job))
+                .thenRunAsync(() -> record(job), ioExecutor)
+                .whenComplete((ignored, error) -> {
+                    cleanup(job);
+                    metrics.recordAttempt(error == null, job.startNanos);
+                    if (error == null) {
+                        complete(job);
+                    } else {
+                        fail(job, error instanceof CompletionException && error.getCause() != null
+                            ? error.getCause() : error);
                     }
-                    
-                    processImageWithRetry(message);
-                    return null;
-                }
-            });
-            
-            // Success - acknowledge the message
-            log.debug("Acknowledging message after successful processing: {}", message.getKey());
-            channel.basicAck(deliveryTag, false);
+                });
+        } catch (RejectedExecutionException e) {
+            // Pipeline is shutting down, hand the message back to the broker
+            log.warn("Pipeline rejected image: {}", job.message.getKey());
+            reject(job);
+        }
+    }
+
+    private CompletableFuture<Void> transcode(ImageJob job) {
+        return CompletableFuture.runAsync(() -> download(job), ioExecutor)
+            .thenRunAsync(() -> generate(job), cpuExecutor)
+            .thenComposeAsync(ignored -> upload(job), ioExecutor);
+    }
+
+    /**
+     * Look for thumbnails that make processing unnecessary: complete ones for this key (a redelivery
+     * or a duplicate message), or ones of identical content stored under another key.
+     */
+    private void lookup(ImageJob job) {
+        String key = job.message.getKey();
+        try {
+            long start = System.nanoTime();
+            Optional<ImageMetadata> processed = findThumbnails(key)
+                .filter(metadata -> thumbnailSettings.equals(metadata.getThumbnailSettings()))
+                .filter(metadata -> job.contentHash == null || metadata.getContentHash() == null
+                    || job.contentHash.equals(metadata.getContentHash()));
+            if (processed.isPresent()) {
+                log.info("Thumbnails of {} are already complete, skipping it", key);
+                job.completed = true;
+                metrics.reused(ThumbnailMetrics.COMPLETED);
+            } else if (job.contentHash != null) {
+                // Only the original's format is recorded, the other encodings are copied along by extension
+                String format = thumbnailEncoders.forExtension(StorageUtil.getExtension(key)).getFormatName();
+                job.duplicateOf = findThumbnailsByContent(job.contentHash, thumbnailSettings)
+                    .filter(metadata -> metadata.getRenditionKeys().keySet().containsAll(renditions))
+                    .filter(metadata -> format.equals(thumbnailEncoders.forExtension(
+                        StorageUtil.getExtension(metadata.getThumbnailKey())).getFormatName()))
+                    .orElse(null);
+            }
+            metrics.recordStage(ThumbnailMetrics.LOOKUP, start);
         } catch (Exception e) {
-            log.error("All retry attempts failed for image: " + message.getKey(), e);
-            
-            try {
-                // After all retries are exhausted, reject the message
-                // to retry later, use basicNack with requeue=true
-                log.debug("Rejecting message after all retry attempts failed: {}", message.getKey());
-                channel.basicNack(deliveryTag, false, true);
-            } catch (IOException ackEx) {
-                log.error("Error handling RabbitMQ acknowledgment for: {}", message.getKey(), ackEx);
+            // Only an optimization, the image can still be processed in full
+            log.warn("Could not look up existing thumbnails for {}: {}", key, e.getMessage());
+        }
+    }
+
+    private CompletableFuture<Void> copy(ImageJob job) {
+        String key = job.message.getKey();
+        log.info("Copying thumbnails of identical content from {} for: {}", job.duplicateOf.getThumbnailKey(), key);
+        List<ThumbnailEncoder> additional = thumbnailEncoders.additionalFor(
+            thumbnailEncoders.forExtension(StorageUtil.getExtension(key)));
+        List<CompletableFuture<Void>> copies = new ArrayList<>();
+        for (int size : renditions) {
+            String sourceKey = job.duplicateOf.getRenditionKeys().get(size);
+            String targetKey = getRenditionKey(key, size);
+            copies.add(copyAsync(sourceKey, targetKey));
+            for (ThumbnailEncoder encoder : additional) {
+                copies.add(copyAsync(StorageUtil.replaceExtension(sourceKey, encoder.getExtension()),
+                    StorageUtil.replaceExtension(targetKey, encoder.getExtension())));
             }
         }
+        return CompletableFuture.allOf(copies.toArray(CompletableFuture<?>[]::new))
+            .thenRun(() -> metrics.reused(ThumbnailMetrics.DUPLICATE));
     }
-    
-    private void processImageWithRetry(ImageProcessingMessage message) {
-        Path tempDir = null;
-        Path originalFile = null;
-        Path thumbnailFile = null;
 
+    private CompletableFuture<Void> copyAsync(String sourceKey, String targetKey) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                long start = System.nanoTime();
+                copyThumbnail(sourceKey, targetKey);
+                metrics.recordStage(ThumbnailMetrics.COPY, start);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, ioExecutor);
+    }
+
+    private void download(ImageJob job) {
         try {
-            log.info("Processing image: {}", message.getKey());
+            log.info("Processing image: {}", job.message.getKey());
+            long start = System.nanoTime();
+
+            long size = job.message.getSize();
+            if (size > 0 && size <= inMemoryThreshold()) {
+                // Typical image: keep the original in memory, no temp files involved
+                job.original = bufferPool.acquire();
+                try (InputStream inputStream = openOriginal(job.message.getKey())) {
+                    job.original.readFrom(inputStream, MAX_BUFFER_SIZE);
+                }
+            } else if (size > 0) {
+                // Known to be large: download straight to disk
+                job.originalFile = createTempOriginal(job);
+                downloadOriginal(job.message.getKey(), job.originalFile);
+            } else {
+                // Unknown size: buffer up to the threshold and spill the rest to disk
+                job.original = bufferPool.acquire();
+                try (InputStream inputStream = openOriginal(job.message.getKey())) {
+                    if (!job.original.readFrom(inputStream, inMemoryThreshold())) {
+                        spill(job, inputStream);
+                    }
+                }
+            }
+            metrics.recordStage(ThumbnailMetrics.DOWNLOAD, start);
+            metrics.recordBytesIn(job.original != null ? job.original.length() : Files.size(job.originalFile));
 
-            tempDir = Files.createTempDirectory("image-processing");
-            originalFile = tempDir.resolve("original" + StorageUtil.getExtension(message.getKey()));
-            thumbnailFile = tempDir.resolve("thumbnail" + StorageUtil.getExtension(message.getKey()));
+            if (job.contentHash == null) {
+                // Message from a producer that does not hash, record the hash for later duplicates
+                job.contentHash = job.original != null ? sha256(job.original.array(), 0, job.original.length())
+                    : sha256(job.originalFile);
+            }
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
+    }
 
-            // Only process if message matches our storage type
-            if (message.getStorageType().equals(getStorageType())) {
-                // Download original file
-                downloadOriginal(message.getKey(), originalFile);
+    private void spill(ImageJob job, InputStream remainder) throws IOException {
+        job.originalFile = createTempOriginal(job);
+        try (OutputStream outputStream = Files.newOutputStream(job.originalFile)) {
+            job.original.writeTo(outputStream);
+            remainder.transferTo(outputStream);
+        }
+        bufferPool.release(job.original);
+        job.original = null;
+    }
 
-                // Generate thumbnail
-                generateThumbnail(originalFile, thumbnailFile);
+    private Path createTempOriginal(ImageJob job) throws IOException {
+        job.tempDir = Files.createTempDirectory("image-processing");
+        return job.tempDir.resolve("original" + StorageUtil.getExtension(job.message.getKey()));
+    }
 
-                // Upload thumbnail
-                String thumbnailKey = StorageUtil.getThumbnailKey(message.getKey());
-                uploadThumbnail(thumbnailFile, thumbnailKey, message.getContentType());
+    private int inMemoryThreshold() {
+        return (int) Math.min(inMemoryThreshold.toBytes(), MAX_BUFFER_SIZE);
+    }
 
-                log.info("Successfully processed image: {}", message.getKey());
-            } else {
-                log.debug("Skipping message with storage type: {} (we handle {})",
-                    message.getStorageType(), getStorageType());
-            }
+    private void generate(ImageJob job) {
+        try (ImageInputStream input = job.originalFile != null
+                 ? ImageIO.createImageInputStream(job.originalFile.toFile())
+                 : job.original.toImageInputStream()) {
+            String key = job.message.getKey();
+            ThumbnailEncoder originalFormat = thumbnailEncoders.forExtension(StorageUtil.getExtension(key));
+            List<ThumbnailEncoder> encoders = new ArrayList<>();
+            encoders.add(originalFormat);
+            encoders.addAll(thumbnailEncoders.additionalFor(originalFormat));
+
+            // Generate all renditions in all formats from a single decode
+            log.info("Generating thumbnails for: {}", key);
+            generateThumbnails(input, renditions, encoders, (size, encoder) -> {
+                String thumbnailKey = getRenditionKey(key, size);
+                Thumbnail thumbnail = encoder == originalFormat
+                    ? new Thumbnail(thumbnailKey, job.message.getContentType(), encoder.getFormatName(), bufferPool.acquire())
+                    : new Thumbnail(StorageUtil.replaceExtension(thumbnailKey, encoder.getExtension()),
+                        encoder.getContentType(), encoder.getFormatName(), bufferPool.acquire());
+                job.thumbnails.add(thumbnail);
+                return thumbnail.content;
+            });
         } catch (Exception e) {
-            log.error("Failed to process image: " + message.getKey(), e);
-            throw new RuntimeException("Failed to process image: " + message.getKey(), e);
+            throw new CompletionException(e);
         } finally {
-            try {
-                // Cleanup temporary files
-                if (originalFile != null) {
-                    Files.deleteIfExists(originalFile);
-                }
-                if (thumbnailFile != null) {
-                    Files.deleteIfExists(thumbnailFile);
-                }
-                if (tempDir != null) {
-                    Files.deleteIfExists(tempDir);
+            // The original is no longer needed once decoded
+            bufferPool.release(job.original);
+            job.original = null;
+        }
+    }
+
+    private CompletableFuture<Void> upload(ImageJob job) {
+        // Upload the renditions in parallel
+        CompletableFuture<?>[] uploads = job.thumbnails.stream()
+            .map(thumbnail -> CompletableFuture.runAsync(() -> {
+                try {
+                    long start = System.nanoTime();
+                    uploadThumbnail(thumbnail.content.array(), thumbnail.content.length(),
+                        thumbnail.key, thumbnail.contentType);
+                    metrics.recordStage(ThumbnailMetrics.UPLOAD, start);
+                    metrics.recordBytesOut(thumbnail.format, thumbnail.content.length());
+                } catch (Exception e) {
+                    throw new CompletionException(e);
                 }
-            } catch (IOException e) {
-                log.error("Error cleaning up temporary files for: {}", message.getKey(), e);
+            }, ioExecutor))
+            .toArray(CompletableFuture<?>[]::new);
+        return CompletableFuture.allOf(uploads);
+    }
+
+    private void record(ImageJob job) {
+        try {
+            String thumbnailKey = StorageUtil.getThumbnailKey(job.message.getKey());
+            if (!job.completed) {
+                // Other formats are found next to each rendition by extension, only the original format is recorded
+                Map<Integer, String> renditionKeys = new TreeMap<>();
+                renditions.forEach(size -> renditionKeys.put(size, getRenditionKey(job.message.getKey(), size)));
+                long start = System.nanoTime();
+                recordThumbnails(thumbnailKey, renditionKeys, job.contentHash, thumbnailSettings);
+                metrics.recordStage(ThumbnailMetrics.METADATA, start);
+                log.info("Successfully processed image: {}", job.message.getKey());
             }
+            publishThumbnailCompleted(job.message, thumbnailKey);
+        } catch (Exception e) {
+            throw new CompletionException(e);
         }
     }
 
-    protected abstract String generateUrl(String key);
+    private String getRenditionKey(String key, int size) {
+        // The default size keeps the original thumbnail key so existing links keep working
+        return size == defaultRendition ? StorageUtil.getThumbnailKey(key) : StorageUtil.getThumbnailKey(key, size);
+    }
+
+    private void complete(ImageJob job) {
+        // Success - acknowledge the message
+        log.debug("Acknowledging message after successful processing: {}", job.message.getKey());
+        try {
+            acknowledge(job.channel, job.deliveryTag, job.message);
+        } finally {
+            inFlight.release();
+        }
+    }
 
-    protected void generateThumbnail(Path input, Path output) throws IOException {
-        log.info("Generating thumbnail for: {}", input);
+    private void fail(ImageJob job, Throwable error) {
+        log.error("Failed to process image: " + job.message.getKey() + " (attempt " + job.attempt + ")", error);
 
-        // Read the original image
-        BufferedImage originalImage = ImageIO.read(input.toFile());
-        if (originalImage == null) {
-            throw new IOException("Could not read image file: " + input);
+        if (job.attempt < MAX_ATTEMPTS) {
+            // Park the message in the broker until its backoff expired, the consumer moves on right away
+            log.info("Retry attempt {} for image: {} in {} ms", job.attempt + 1, job.message.getKey(),
+                brokerBackoff ? retryDelayMs(job.attempt) : 0);
+            String queue = getQueueName();
+            if (republish(job, brokerBackoff ? retryQueueName(queue, job.attempt) : queue, job.attempt + 1, null)) {
+                metrics.retried();
+            }
+            return;
         }
 
-        int originalWidth = originalImage.getWidth();
-        int originalHeight = originalImage.getHeight();
+        String deadLetterQueue = deadLetterQueueName(getQueueName());
+        log.error("All retry attempts failed for image: {}, moving it to {}", job.message.getKey(), deadLetterQueue);
+        if (republish(job, deadLetterQueue, job.attempt, error)) {
+            metrics.deadLettered();
+        }
+    }
 
-        // Calculate thumbnail dimensions while preserving aspect ratio
-        // Increased size significantly for better clarity (600px max dimension)
-        int maxDimension = 600;
-        int thumbnailWidth, thumbnailHeight;
-        
-        double aspectRatio = (double) originalWidth / originalHeight;
+    /**
+     * Publish the message to another queue and acknowledge the delivery once the broker confirmed
+     * the copy. When publishing or the confirm fails the delivery is handed back to the broker
+     * instead, so the message is never lost. Neither happens when the delivery's channel has
+     * closed: the broker already requeued the message.
+     */
+    private boolean republish(ImageJob job, String queue, int attempt, Throwable error) {
+        if (!job.channel.isOpen()) {
+            log.warn("Channel of image {} closed, the broker delivers it again", job.message.getKey());
+            inFlight.release();
+            return false;
+        }
+        try {
+            rabbitTemplate.invoke(operations -> {
+                operations.convertAndSend("", queue, job.message, amqpMessage -> {
+                    amqpMessage.getMessageProperties().setHeader(RETRY_ATTEMPT_HEADER, attempt);
+                    if (error != null) {
+                        amqpMessage.getMessageProperties().setHeader(FAILURE_HEADER, String.valueOf(error));
+                    }
+                    return amqpMessage;
+                });
+                operations.waitForConfirmsOrDie(confirmTimeout.toMillis());
+                return null;
+            });
+        } catch (AmqpException e) {
+            log.error("Could not move image {} to {}, handing it back to the broker", job.message.getKey(), queue, e);
+            reject(job);
+            return false;
+        }
+        try {
+            acknowledge(job.channel, job.deliveryTag, job.message);
+        } finally {
+            inFlight.release();
+        }
+        return true;
+    }
 
-        if (originalWidth > originalHeight) {
-            thumbnailWidth = maxDimension;
-            thumbnailHeight = (int) (maxDimension / aspectRatio);
-        } else {
-            thumbnailHeight = maxDimension;
-            thumbnailWidth = (int) (maxDimension * aspectRatio);
+    private void reject(ImageJob job) {
+        try {
+            // Requeue: the message stays in the processing queue with its attempt count unchanged
+            log.debug("Rejecting message: {}", job.message.getKey());
+            metrics.nacked();
+            job.channel.basicNack(job.deliveryTag, false, true);
+        } catch (IOException | RuntimeException ackEx) {
+            // e.g. the channel closed (ShutdownSignalException): the broker requeued the message itself
+            log.error("Error handling RabbitMQ acknowledgment for: {}", job.message.getKey(), ackEx);
+        } finally {
+            inFlight.release();
         }
+    }
 
-        // Multi-step scaling for higher quality
-        // This progressive scaling produces better results than single-step scaling
-        BufferedImage resultImage = progressiveScaling(originalImage, thumbnailWidth, thumbnailHeight);
+    private void acknowledge(Channel channel, long deliveryTag, ImageProcessingMessage message) {
+        try {
+            channel.basicAck(deliveryTag, false);
+        } catch (IOException | RuntimeException ackEx) {
+            // e.g. the channel closed (ShutdownSignalException): the broker delivers the message again
+            log.error("Error handling RabbitMQ acknowledgment for: {}", message.getKey(), ackEx);
+        }
+    }
 
-        // Sharpen the image to enhance details
-        resultImage = sharpenImage(resultImage);
+    private void cleanup(ImageJob job) {
+        bufferPool.release(job.original);
+        job.thumbnails.forEach(thumbnail -> bufferPool.release(thumbnail.content));
+        job.original = null;
+        job.thumbnails.clear();
+        try {
+            // Cleanup temporary files
+            if (job.originalFile != null) {
+                Files.deleteIfExists(job.originalFile);
+            }
+            if (job.tempDir != null) {
+                Files.deleteIfExists(job.tempDir);
+            }
+        } catch (IOException e) {
+            log.error("Error cleaning up temporary files for: {}", job.message.getKey(), e);
+        } finally {
+            job.originalFile = null;
+            job.tempDir = null;
+        }
+    }
 
-        // Determine the output format based on the file extension
-        String extension = StorageUtil.getExtension(output.toString());
-        if (extension.startsWith(".")) {
-            extension = extension.substring(1);
+    /**
+     * Tell interested parties (e.g. web tier caches) that a thumbnail is available.
+     * The thumbnail is already stored, so a failure here must not fail the job.
+     */
+    private void publishThumbnailCompleted(ImageProcessingMessage message, String thumbnailKey) {
+        try {
+            rabbitTemplate.convertAndSend(IMAGE_EVENTS_EXCHANGE, "",
+                new ThumbnailCompletedMessage(message.getKey(), thumbnailKey, message.getStorageType()));
+        } catch (AmqpException e) {
+            log.warn("Could not publish thumbnail completion for {}: {}", message.getKey(), e.getMessage());
         }
-        if (extension.isEmpty()) {
-            extension = "jpg"; // Default to jpg if no extension found
+    }
+
+    protected abstract String generateUrl(String key);
+
+    private static String sha256(byte[] data, int offset, int length) {
+        MessageDigest digest = newSha256();
+        digest.update(data, offset, length);
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static String sha256(Path file) throws IOException {
+        MessageDigest digest = newSha256();
+        byte[] chunk = new byte[64 * 1024];
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            for (int read; (read = inputStream.read(chunk)) > 0; ) {
+                digest.update(chunk, 0, read);
+            }
         }
+        return HexFormat.of().formatHex(digest.digest());
+    }
 
-        // Write the thumbnail with optimized settings for different formats
-        if (extension.equalsIgnoreCase("jpg") || extension.equalsIgnoreCase("jpeg")) {
-            // For JPEG, we need to set compression quality
-            javax.imageio.ImageWriter jpgWriter = javax.imageio.ImageIO.getImageWritersByFormatName("jpg").next();
-            javax.imageio.ImageWriteParam jpgWriteParam = jpgWriter.getDefaultWriteParam();
-            jpgWriteParam.setCompressionMode(javax.imageio.ImageWriteParam.MODE_EXPLICIT);
-            // Higher compression quality (0.95 for maximum clarity)
-            jpgWriteParam.setCompressionQuality(0.95f);
-            
-            javax.imageio.IIOImage outputImage = new javax.imageio.IIOImage(resultImage, null, null);
-            javax.imageio.stream.ImageOutputStream outputStream = 
-                javax.imageio.ImageIO.createImageOutputStream(output.toFile());
-            jpgWriter.setOutput(outputStream);
-            jpgWriter.write(null, outputImage, jpgWriteParam);
-            jpgWriter.dispose();
-            outputStream.close();
-        } else {
-            // For PNG, use compression level 0 (no compression) for best quality
-            javax.imageio.ImageWriteParam pngWriteParam = null;
-            if (extension.equalsIgnoreCase("png")) {
-                javax.imageio.ImageWriter pngWriter = ImageIO.getImageWritersByFormatName("png").next();
-                pngWriteParam = pngWriter.getDefaultWriteParam();
-                if (pngWriteParam.canWriteCompressed()) {
-                    pngWriteParam.setCompressionMode(javax.imageio.ImageWriteParam.MODE_EXPLICIT);
-                    pngWriteParam.setCompressionType("Deflate");
-                    pngWriteParam.setCompressionQuality(0.0f); // 0 = best quality for PNG
-                    
-                    javax.imageio.IIOImage outputImage = new javax.imageio.IIOImage(resultImage, null, null);
-                    javax.imageio.stream.ImageOutputStream outputStream = 
-                        javax.imageio.ImageIO.createImageOutputStream(output.toFile());
-                    pngWriter.setOutput(outputStream);
-                    pngWriter.write(null, outputImage, pngWriteParam);
-                    pngWriter.dispose();
-                    outputStream.close();
-                } else {
-                    ImageIO.write(resultImage, extension, output.toFile());
-                }
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Decode an image once and encode a rendition for each size with each encoder.
+     * Renditions cascade from the largest down, each scaled from the previous one before
+     * that one is sharpened.
+     * The input stream is not closed; each output stream is written completely but left open.
+     */
+    protected void generateThumbnails(ImageInputStream input, List<Integer> sizes, List<ThumbnailEncoder> encoders,
+                                      BiFunction<Integer, ThumbnailEncoder, OutputStream> outputs) throws IOException {
+        List<Integer> descending = sizes.stream().sorted(Comparator.reverseOrder()).toList();
+        long start = System.nanoTime();
+        BufferedImage image = readSubsampled(input, descending.get(0));
+        metrics.recordStage(ThumbnailMetrics.DECODE, start);
+
+        int sourceWidth = image.getWidth();
+        int sourceHeight = image.getHeight();
+        BufferedImage scaled = null; // resampler: the next rendition, scaled but not sharpened yet
+        for (int index = 0; index < descending.size(); index++) {
+            Dimension target = fitDimensions(sourceWidth, sourceHeight, descending.get(index));
+            BufferedImage thumbnail;
+            start = System.nanoTime();
+            if (resamplingFilter == null) {
+                // Multi-step scaling for higher quality
+                // This progressive scaling produces better results than single-step scaling
+                image = progressiveScaling(image, target.width, target.height);
+                metrics.recordStage(ThumbnailMetrics.SCALE, start);
+                // Sharpen the image to enhance details
+                start = System.nanoTime();
+                thumbnail = sharpenImage(image);
+                metrics.recordStage(ThumbnailMetrics.SHARPEN, start);
             } else {
-                // For other formats, use regular write method
-                ImageIO.write(resultImage, extension, output.toFile());
+                // The resampler does not scale up images that are already smaller than the target.
+                // The last rendition folds the sharpening into its kernel, the others are sharpened
+                // in place by a 3-tap pass once the next rendition has been scaled from them.
+                if (scaled == null) {
+                    scaled = Resampler.resize(image, target.width, target.height, resamplingFilter,
+                        index + 1 == descending.size() ? sharpen : 0f);
+                    metrics.recordStage(ThumbnailMetrics.SCALE, start);
+                }
+                thumbnail = scaled;
+                scaled = null;
+                if (index + 1 < descending.size()) {
+                    start = System.nanoTime();
+                    Dimension next = fitDimensions(sourceWidth, sourceHeight, descending.get(index + 1));
+                    scaled = Resampler.resize(thumbnail, next.width, next.height, resamplingFilter,
+                        index + 2 == descending.size() ? sharpen : 0f);
+                    metrics.recordStage(ThumbnailMetrics.SCALE, start);
+                    start = System.nanoTime();
+                    Resampler.sharpen(thumbnail, sharpen);
+                    metrics.recordStage(ThumbnailMetrics.SHARPEN, start);
+                }
+            }
+
+            for (ThumbnailEncoder encoder : encoders) {
+                start = System.nanoTime();
+                try (ImageOutputStream output = new MemoryCacheImageOutputStream(outputs.apply(descending.get(index), encoder))) {
+                    encoder.encode(thumbnail, output);
+                }
+                metrics.recordStage(ThumbnailMetrics.ENCODE, start);
             }
         }
+    }
+
+    /**
+     * Read the original image, letting the decoder skip pixels so that only about twice the
+     * given size is materialized. The exact resample happens afterwards on the smaller raster.
+     */
+    protected BufferedImage readSubsampled(ImageInputStream input, int maxDimension) throws IOException {
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext()) {
+            throw new IOException("Could not read image: no decoder for this format");
+        }
+
+        ImageReader reader = readers.next();
+        try {
+            reader.setInput(input, true, true);
+            int width = reader.getWidth(0);
+            int height = reader.getHeight(0);
+            metrics.recordSourceDimensions(width, height);
+
+            ImageReadParam param = reader.getDefaultReadParam();
+            int subsampling = Math.max(1, Math.max(width, height) / (maxDimension * 2));
+            if (subsampling > 1) {
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                log.debug("Decoding {}x{} image with subsampling {}", width, height, subsampling);
+            }
 
-        log.info("Successfully generated thumbnail: {}", output);
+            BufferedImage image = reader.read(0, param);
+            if (image == null) {
+                throw new IOException("Could not read image");
+            }
+            return image;
+        } finally {
+            reader.dispose();
+        }
     }
-    
+
+    /**
+     * Dimensions that fit the given maximum dimension, keeping the aspect ratio of the source.
+     */
+    protected Dimension fitDimensions(int sourceWidth, int sourceHeight, int maxDimension) {
+        // Calculate thumbnail dimensions while preserving aspect ratio
+        double aspectRatio = (double) sourceWidth / sourceHeight;
+
+        if (sourceWidth > sourceHeight) {
+            return new Dimension(maxDimension, Math.max(1, (int) (maxDimension / aspectRatio)));
+        }
+        return new Dimension(Math.max(1, (int) (maxDimension * aspectRatio)), maxDimension);
+    }
+
     /**
      * Performs progressive scaling of the image for better quality.
      * This method gradually scales down the image in multiple steps rather than all at once.
      */
-    private BufferedImage progressiveScaling(BufferedImage source, int targetWidth, int targetHeight) {
+    protected BufferedImage progressiveScaling(BufferedImage source, int targetWidth, int targetHeight) {
         // Current dimensions
         int currentWidth = source.getWidth();
         int currentHeight = source.getHeight();
@@ -242,7 +753,7 @@ public abstract class AbstractFileProcessingService implements FileProcessor {
     /**
      * Scale an image to specific dimensions using high quality settings.
      */
-    private BufferedImage scaleImage(BufferedImage source, int width, int height) {
+    protected BufferedImage scaleImage(BufferedImage source, int width, int height) {
         // Create a new BufferedImage for the result
         BufferedImage result;
         
@@ -273,7 +784,7 @@ public abstract class AbstractFileProcessingService implements FileProcessor {
     /**
      * Apply a sharpening filter to enhance image clarity
      */
-    private BufferedImage sharpenImage(BufferedImage image) {
+    protected BufferedImage sharpenImage(BufferedImage image) {
         float[] sharpenMatrix = {
             0, -0.2f, 0,
             -0.2f, 1.8f, -0.2f,
@@ -285,14 +796,76 @@ public abstract class AbstractFileProcessingService implements FileProcessor {
             kernel, java.awt.image.ConvolveOp.EDGE_NO_OP, null);
         
         // Create a compatible destination image to avoid potential issues with some image types
-        BufferedImage output;
-        if (image.getTransparency() != BufferedImage.OPAQUE) {
-            output = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
-        } else {
-            output = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB); 
+        int type = image.getTransparency() != BufferedImage.OPAQUE ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage output = new BufferedImage(image.getWidth(), image.getHeight(), type);
+        if (image.getType() != type) {
+            // Images smaller than the rendition arrive unscaled in the decoder's layout (e.g. 3-byte BGR),
+            // which ConvolveOp cannot filter into an int image
+            BufferedImage converted = new BufferedImage(image.getWidth(), image.getHeight(), type);
+            Graphics2D g2d = converted.createGraphics();
+            g2d.drawImage(image, 0, 0, null);
+            g2d.dispose();
+            image = converted;
         }
         
         // Apply the filter
         return convolveOp.filter(image, output);
     }
+
+    /**
+     * One encoded rendition waiting to be uploaded.
+     */
+    private static class Thumbnail {
+        final String key;
+        final String contentType;
+        final String format; // of the encoder that wrote it
+        final BufferPool.Buffer content;
+
+        Thumbnail(String key, String contentType, String format, BufferPool.Buffer content) {
+            this.key = key;
+            this.contentType = contentType;
+            this.format = format;
+            this.content = content;
+        }
+    }
+
+    /**
+     * State of one delivery as it moves through the pipeline stages.
+     */
+    private static class ImageJob {
+        final ImageProcessingMessage message;
+        final Channel channel;
+        final long deliveryTag;
+        final int attempt; // 1 for the first delivery, from the retry header after that
+        long startNanos; // of this delivery
+        String contentHash; // from the message, or computed after download
+        boolean completed; // thumbnails for this key already exist
+        ImageMetadata duplicateOf; // processed image with identical content, whose thumbnails are copied
+        BufferPool.Buffer original; // in memory unless spilled to originalFile
+        final List<Thumbnail> thumbnails = new ArrayList<>();
+        Path tempDir;
+        Path originalFile;
+
+        ImageJob(ImageProcessingMessage message, Channel channel, long deliveryTag, int attempt) {
+            this.message = message;
+            this.channel = channel;
+            this.deliveryTag = deliveryTag;
+            this.attempt = attempt;
+            this.contentHash = message.getContentHash();
+        }
+    }
+
+    /**
+     * Semaphore whose permit count can be lowered while permits are held
+     */
+    private static class InFlightPermits extends Semaphore {
+        InFlightPermits(int permits) {
+            super(permits);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
 }
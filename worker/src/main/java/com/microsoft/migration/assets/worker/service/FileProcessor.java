@@ -1,9 +1,20 @@
 package com.microsoft.migration.assets.worker.service;
 
+import com.microsoft.migration.assets.worker.model.ImageMetadata;
+
+import java.io.InputStream;
 import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
 
 public interface FileProcessor {
+    InputStream openOriginal(String key) throws Exception;
     void downloadOriginal(String key, Path destination) throws Exception;
-    void uploadThumbnail(Path source, String key, String contentType) throws Exception;
+    void uploadThumbnail(byte[] content, int length, String key, String contentType) throws Exception;
+    void copyThumbnail(String sourceKey, String targetKey) throws Exception;
+    void recordThumbnails(String thumbnailKey, Map<Integer, String> renditionKeys, String contentHash,
+                          String thumbnailSettings) throws Exception;
+    Optional<ImageMetadata> findThumbnails(String key) throws Exception;
+    Optional<ImageMetadata> findThumbnailsByContent(String contentHash, String thumbnailSettings) throws Exception;
     String getStorageType();
 }
\ No newline at end of file
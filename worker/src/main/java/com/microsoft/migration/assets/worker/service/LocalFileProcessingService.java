@@ -1,13 +1,18 @@
 package com.microsoft.migration.assets.worker.service;
 
+import com.microsoft.migration.assets.worker.model.ImageMetadata;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Service;
 import jakarta.annotation.PostConstruct;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Optional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -33,6 +38,15 @@ public class LocalFileProcessingService extends AbstractFileProcessingService {
         }
     }
 
+    @Override
+    public InputStream openOriginal(String key) throws Exception {
+        Path sourcePath = rootLocation.resolve(key);
+        if (!Files.exists(sourcePath)) {
+            throw new java.io.FileNotFoundException("File not found: " + sourcePath);
+        }
+        return Files.newInputStream(sourcePath);
+    }
+
     @Override
     public void downloadOriginal(String key, Path destination) throws Exception {
         Path sourcePath = rootLocation.resolve(key);
@@ -43,10 +57,36 @@ public class LocalFileProcessingService extends AbstractFileProcessingService {
     }
 
     @Override
-    public void uploadThumbnail(Path source, String key, String contentType) throws Exception {
+    public void uploadThumbnail(byte[] content, int length, String key, String contentType) throws Exception {
         Path destinationPath = rootLocation.resolve(key);
         Files.createDirectories(destinationPath.getParent());
-        Files.copy(source, destinationPath, StandardCopyOption.REPLACE_EXISTING);
+        try (OutputStream outputStream = Files.newOutputStream(destinationPath)) {
+            outputStream.write(content, 0, length);
+        }
+    }
+
+    @Override
+    public void copyThumbnail(String sourceKey, String targetKey) throws Exception {
+        Path targetPath = rootLocation.resolve(targetKey);
+        Files.createDirectories(targetPath.getParent());
+        Files.copy(rootLocation.resolve(sourceKey), targetPath, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @Override
+    public void recordThumbnails(String thumbnailKey, Map<Integer, String> renditionKeys, String contentHash,
+                                 String thumbnailSettings) {
+        // Local storage keeps no metadata; renditions are found by their keys
+    }
+
+    @Override
+    public Optional<ImageMetadata> findThumbnails(String key) {
+        // Files are overwritten in place and no metadata is kept, so every message is processed
+        return Optional.empty();
+    }
+
+    @Override
+    public Optional<ImageMetadata> findThumbnailsByContent(String contentHash, String thumbnailSettings) {
+        return Optional.empty();
     }
 
     @Override
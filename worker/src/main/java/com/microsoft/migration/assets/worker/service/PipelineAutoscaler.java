@@ -0,0 +1,163 @@
+package com.microsoft.migration.assets.worker.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.microsoft.migration.assets.worker.config.RabbitConfig.LISTENER_ID;
+
+/**
+ * Resizes the pipeline's in-flight limit, how many images this worker takes on at once, between
+ * worker.autoscale.min-in-flight and worker.pipeline.max-in-flight. The listener's consumers are
+ * left alone: removing one closes its channel, and the deliveries of that channel still in the
+ * pipeline could then neither be acknowledged nor retried.
+ * <p>
+ * The backlog is estimated to drain at the throughput observed since the last check. When that
+ * takes longer than the target drain time, the limit is raised in proportion, unless the pipeline
+ * latency shows the worker is already saturated and more parallelism would only add queueing.
+ * It is lowered by a quarter once the backlog has stayed small for the scale-down delay.
+ * Queue depth and the limit are also exported, so an orchestrator can scale replicas.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "worker.autoscale.enabled", havingValue = "true", matchIfMissing = true)
+public class PipelineAutoscaler {
+
+    @Autowired
+    private AmqpAdmin amqpAdmin;
+
+    @Autowired
+    private RabbitListenerEndpointRegistry listenerRegistry;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private Queue imageProcessingQueue;
+
+    @Autowired
+    private AbstractFileProcessingService fileProcessingService;
+
+    @Value("${worker.autoscale.min-in-flight:4}")
+    private int minInFlight;
+
+    @Value("${worker.autoscale.target-drain-time:60s}")
+    private Duration targetDrainTime;
+
+    @Value("${worker.autoscale.max-latency:30s}")
+    private Duration maxLatency; // average pipeline time above which the limit is no longer raised
+
+    @Value("${worker.autoscale.scale-down-delay:60s}")
+    private Duration scaleDownDelay;
+
+    private final AtomicLong queueDepth = new AtomicLong(-1); // ready messages, -1 until first observed
+    private final AtomicInteger queueConsumers = new AtomicInteger(); // all replicas, as seen by the broker
+
+    private long lastCheckNanos;
+    private long lastCompleted;
+    private double lastTotalNanos;
+    private long idleSinceNanos = -1;
+
+    @PostConstruct
+    public void init() {
+        if (minInFlight < 1 || fileProcessingService.getMaxInFlight() < minInFlight) {
+            throw new IllegalStateException("worker.autoscale needs 1 <= min-in-flight <= worker.pipeline.max-in-flight");
+        }
+        String queueName = imageProcessingQueue.getName();
+        Gauge.builder("worker.queue.depth", queueDepth, AtomicLong::get)
+            .description("Messages ready for delivery in the queue")
+            .tag("queue", queueName)
+            .register(meterRegistry);
+        Gauge.builder("worker.queue.consumers", queueConsumers, AtomicInteger::get)
+            .description("Consumers of the queue across all workers")
+            .tag("queue", queueName)
+            .register(meterRegistry);
+        lastCheckNanos = System.nanoTime();
+    }
+
+    @Scheduled(initialDelayString = "${worker.autoscale.interval:10s}", fixedDelayString = "${worker.autoscale.interval:10s}")
+    public void adjust() {
+        MessageListenerContainer container = listenerRegistry.getListenerContainer(LISTENER_ID);
+        if (container == null || !container.isRunning()) {
+            return;
+        }
+        QueueInformation queue = amqpAdmin.getQueueInfo(imageProcessingQueue.getName());
+        if (queue == null) {
+            log.debug("Queue {} not available, keeping an in-flight limit of {}", imageProcessingQueue.getName(),
+                fileProcessingService.getInFlightLimit());
+            return;
+        }
+        long depth = queue.getMessageCount();
+        queueDepth.set(depth);
+        queueConsumers.set(queue.getConsumerCount());
+
+        // Throughput and average latency of the pipeline since the last check
+        long now = System.nanoTime();
+        long completed = 0;
+        double totalNanos = 0;
+        for (Timer timer : meterRegistry.find(ThumbnailMetrics.PIPELINE_TIMER).timers()) {
+            completed += timer.count();
+            totalNanos += timer.totalTime(TimeUnit.NANOSECONDS);
+        }
+        long finished = completed - lastCompleted;
+        double averageNanos = finished > 0 ? (totalNanos - lastTotalNanos) / finished : 0;
+        double perSecond = finished / ((now - lastCheckNanos) / 1e9);
+        lastCompleted = completed;
+        lastTotalNanos = totalNanos;
+        lastCheckNanos = now;
+
+        int current = fileProcessingService.getInFlightLimit();
+        int desired = desiredLimit(Math.max(current, minInFlight), depth, perSecond, averageNanos, now);
+        if (desired != current) {
+            log.info("Scaling in-flight limit from {} to {} (queue depth {}, {} images/s, average latency {} ms)",
+                current, desired, depth, String.format("%.2f", perSecond), Math.round(averageNanos / 1e6));
+            fileProcessingService.setInFlightLimit(desired);
+        }
+    }
+
+    private int desiredLimit(int current, long depth, double perSecond, double averageNanos, long now) {
+        int maxInFlight = fileProcessingService.getMaxInFlight();
+        double drainSeconds = depth == 0 ? 0 : perSecond > 0 ? depth / perSecond : Double.POSITIVE_INFINITY;
+        double targetSeconds = targetDrainTime.toNanos() / 1e9;
+
+        if (drainSeconds > targetSeconds) {
+            idleSinceNanos = -1;
+            if (averageNanos > maxLatency.toNanos()) {
+                return Math.min(current, maxInFlight); // saturated, more parallelism would not drain faster
+            }
+            // Nothing completed yet: double the limit until there is a throughput to go by
+            int wanted = Double.isInfinite(drainSeconds) ? current * 2 : (int) Math.ceil(current * drainSeconds / targetSeconds);
+            return Math.min(Math.max(wanted, current), maxInFlight);
+        }
+
+        if (drainSeconds > targetSeconds / 2 || current <= minInFlight) {
+            idleSinceNanos = -1;
+            return current;
+        }
+        if (idleSinceNanos < 0) {
+            idleSinceNanos = now;
+        }
+        if (now - idleSinceNanos < scaleDownDelay.toNanos()) {
+            return current;
+        }
+        idleSinceNanos = now; // step down again only after another full delay
+        return Math.max(current - Math.max(current / 4, 1), minInFlight);
+    }
+}
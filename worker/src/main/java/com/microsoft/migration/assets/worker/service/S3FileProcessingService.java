@@ -6,15 +6,19 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Service;
-import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetUrlRequest;
-import software.amazon.awssdk.services.s3.model.PutObjectRequest;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
 
 @Service
 @Profile("!dev")
@@ -22,45 +26,79 @@ import java.nio.file.StandardCopyOption;
 public class S3FileProcessingService extends AbstractFileProcessingService {
     private final S3Client s3Client;
     private final ImageMetadataRepository imageMetadataRepository;
+    private final S3MultipartUploader multipartUploader;
     
     @Value("${aws.s3.bucket}")
     private String bucketName;
 
     @Override
-    public void downloadOriginal(String key, Path destination) throws Exception {
+    public InputStream openOriginal(String key) throws Exception {
         GetObjectRequest request = GetObjectRequest.builder()
                 .bucket(bucketName)
                 .key(key)
                 .build();
-                
-        try (var inputStream = s3Client.getObject(request)) {
+        return s3Client.getObject(request);
+    }
+
+    @Override
+    public void downloadOriginal(String key, Path destination) throws Exception {
+        try (var inputStream = openOriginal(key)) {
             Files.copy(inputStream, destination, StandardCopyOption.REPLACE_EXISTING);
         }
     }
 
     @Override
-    public void uploadThumbnail(Path source, String key, String contentType) throws Exception {
-        PutObjectRequest request = PutObjectRequest.builder()
-                .bucket(bucketName)
-                .key(key)
-                .contentType(contentType)
-                .build();
-                
-        s3Client.putObject(request, RequestBody.fromFile(source));
-        
-        // Save or update thumbnail metadata
-        ImageMetadata metadata = imageMetadataRepository.findById(extractOriginalKey(key))
+    public void uploadThumbnail(byte[] content, int length, String key, String contentType) throws Exception {
+        multipartUploader.upload(bucketName, key, contentType, new ByteArrayInputStream(content, 0, length), length);
+    }
+
+    @Override
+    public void copyThumbnail(String sourceKey, String targetKey) {
+        // Server-side copy, content type and metadata are copied along
+        s3Client.copyObject(CopyObjectRequest.builder()
+                .sourceBucket(bucketName)
+                .sourceKey(sourceKey)
+                .destinationBucket(bucketName)
+                .destinationKey(targetKey)
+                .build());
+    }
+
+    @Override
+    public void recordThumbnails(String thumbnailKey, Map<Integer, String> renditionKeys, String contentHash,
+                                 String thumbnailSettings) {
+        // Save or update thumbnail metadata once all renditions are stored. The web tier commits the
+        // row before the message is published, so a new row is only needed for objects uploaded elsewhere
+        String originalKey = extractOriginalKey(thumbnailKey);
+        ImageMetadata metadata = imageMetadataRepository.findByS3Key(originalKey)
             .orElseGet(() -> {
                 ImageMetadata newMetadata = new ImageMetadata();
-                newMetadata.setId(extractOriginalKey(key));
+                newMetadata.setId(UUID.randomUUID().toString());
+                newMetadata.setS3Key(originalKey);
                 return newMetadata;
             });
 
-        metadata.setThumbnailKey(key);
-        metadata.setThumbnailUrl(generateUrl(key));
+        metadata.setThumbnailKey(thumbnailKey);
+        metadata.setThumbnailUrl(generateUrl(thumbnailKey));
+        metadata.getRenditionKeys().clear();
+        metadata.getRenditionKeys().putAll(renditionKeys);
+        metadata.setContentHash(contentHash);
+        metadata.setThumbnailSettings(thumbnailSettings);
         imageMetadataRepository.save(metadata);
     }
 
+    @Override
+    public Optional<ImageMetadata> findThumbnails(String key) {
+        return imageMetadataRepository.findByS3Key(key)
+            .filter(metadata -> metadata.getThumbnailKey() != null);
+    }
+
+    @Override
+    public Optional<ImageMetadata> findThumbnailsByContent(String contentHash, String thumbnailSettings) {
+        return imageMetadataRepository.findFirstByContentHashAndThumbnailSettingsAndThumbnailKeyIsNotNull(
+                contentHash, thumbnailSettings)
+            .flatMap(metadata -> imageMetadataRepository.findWithRenditionKeysById(metadata.getId()));
+    }
+
     @Override
     public String getStorageType() {
         return "s3";
@@ -76,11 +114,11 @@ public class S3FileProcessingService extends AbstractFileProcessingService {
     }
 
     private String extractOriginalKey(String key) {
-        // Remove _thumbnail suffix if present
+        // Remove _thumbnail suffix if present, keeping the extension after it
         String suffix = "_thumbnail";
         int suffixIndex = key.lastIndexOf(suffix);
         if (suffixIndex > 0) {
-            return key.substring(0, suffixIndex);
+            return key.substring(0, suffixIndex) + key.substring(suffixIndex + suffix.length());
         }
         return key;
     }
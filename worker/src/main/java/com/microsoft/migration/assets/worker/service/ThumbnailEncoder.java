@@ -0,0 +1,63 @@
+package com.microsoft.migration.assets.worker.service;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * Encodes thumbnails in one output format through the ImageIO writer registered for it.
+ * Compression settings are applied when the writer supports them.
+ */
+@Getter
+@RequiredArgsConstructor
+public class ThumbnailEncoder {
+    private final String formatName;
+    private final String contentType;
+    private final String extension; // including the dot
+    private final String compressionType; // null for the writer's default
+    private final Float quality; // 0..1, null for the writer's default
+
+    /**
+     * Whether an ImageIO writer is registered for this format.
+     */
+    public boolean isAvailable() {
+        return ImageIO.getImageWritersByFormatName(formatName).hasNext();
+    }
+
+    public void encode(BufferedImage image, ImageOutputStream output) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(formatName);
+        if (!writers.hasNext()) {
+            throw new IOException("No image writer available for format: " + formatName);
+        }
+
+        ImageWriter writer = writers.next();
+        try {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (param.canWriteCompressed() && (compressionType != null || quality != null)) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                if (compressionType != null) {
+                    param.setCompressionType(compressionType);
+                } else if (param.getCompressionType() == null && param.getCompressionTypes() != null) {
+                    param.setCompressionType(param.getCompressionTypes()[0]);
+                }
+                if (quality != null) {
+                    param.setCompressionQuality(quality);
+                }
+            }
+
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), param);
+            output.flush();
+        } finally {
+            writer.dispose();
+        }
+    }
+}
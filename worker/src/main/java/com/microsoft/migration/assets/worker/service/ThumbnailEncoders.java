@@ -0,0 +1,100 @@
+package com.microsoft.migration.assets.worker.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Registry of thumbnail encoders. Every thumbnail is written in the format of its original
+ * (the key keeps its extension) and additionally in each configured modern format whose
+ * writer is available, stored next to it under that format's extension.
+ */
+@Slf4j
+@Component
+public class ThumbnailEncoders {
+
+    @Value("${worker.thumbnail.formats:webp}")
+    private List<String> formats;
+
+    @Value("${worker.thumbnail.jpeg.quality:0.85}")
+    private float jpegQuality;
+
+    @Value("${worker.thumbnail.png.compression-level:6}")
+    private int pngCompressionLevel; // deflate level 0-9, higher is smaller and slower
+
+    @Value("${worker.thumbnail.webp.quality:0.8}")
+    private float webpQuality;
+
+    @Value("${worker.thumbnail.webp.lossless:false}")
+    private boolean webpLossless;
+
+    @Value("${worker.thumbnail.avif.quality:0.6}")
+    private float avifQuality;
+
+    private final Map<String, ThumbnailEncoder> encoders = new LinkedHashMap<>();
+    private final List<ThumbnailEncoder> additionalEncoders = new ArrayList<>();
+
+    @PostConstruct
+    public void init() {
+        ThumbnailEncoder jpeg = new ThumbnailEncoder("jpeg", "image/jpeg", ".jpg", null, jpegQuality);
+        encoders.put("jpg", jpeg);
+        encoders.put("jpeg", jpeg);
+        // The PNG writer maps quality to the deflate level as level = 9 * (1 - quality)
+        encoders.put("png", new ThumbnailEncoder("png", "image/png", ".png", "Deflate",
+            1.0f - Math.min(Math.max(pngCompressionLevel, 0), 9) / 9.0f));
+        encoders.put("webp", new ThumbnailEncoder("webp", "image/webp", ".webp",
+            webpLossless ? "Lossless" : "Lossy", webpQuality));
+        encoders.put("avif", new ThumbnailEncoder("avif", "image/avif", ".avif", null, avifQuality));
+
+        for (String format : formats) {
+            ThumbnailEncoder encoder = encoders.get(format.trim().toLowerCase(Locale.ROOT));
+            if (encoder == null) {
+                log.warn("Ignoring unknown thumbnail format: {}", format);
+            } else if (!encoder.isAvailable()) {
+                log.warn("No image writer installed for thumbnail format {}, skipping it", format);
+            } else {
+                additionalEncoders.add(encoder);
+            }
+        }
+        log.info("Thumbnail formats: original + {}", additionalEncoders.stream().map(ThumbnailEncoder::getFormatName).toList());
+    }
+
+    /**
+     * Settings that change the encoded thumbnails, so thumbnails made with other settings are not reused.
+     */
+    public String describeSettings() {
+        return "formats=" + additionalEncoders.stream().map(ThumbnailEncoder::getFormatName).toList()
+            + ";jpeg=" + jpegQuality + ";png=" + pngCompressionLevel
+            + ";webp=" + webpQuality + (webpLossless ? "/lossless" : "") + ";avif=" + avifQuality;
+    }
+
+    /**
+     * Encoder for the format of the original, identified by its extension (with or without the dot).
+     */
+    public ThumbnailEncoder forExtension(String extension) {
+        String format = extension.startsWith(".") ? extension.substring(1) : extension;
+        if (format.isEmpty()) {
+            format = "jpg"; // Default to jpg if no extension found
+        }
+        format = format.toLowerCase(Locale.ROOT);
+        ThumbnailEncoder encoder = encoders.get(format);
+        // Other formats (gif, bmp, ...) use the writer's defaults
+        return encoder != null ? encoder : new ThumbnailEncoder(format, "image/" + format, "." + format, null, null);
+    }
+
+    /**
+     * Encoders for the configured modern formats, excluding the one of the original.
+     */
+    public List<ThumbnailEncoder> additionalFor(ThumbnailEncoder original) {
+        return additionalEncoders.stream()
+            .filter(encoder -> !encoder.getFormatName().equals(original.getFormatName()))
+            .toList();
+    }
+}
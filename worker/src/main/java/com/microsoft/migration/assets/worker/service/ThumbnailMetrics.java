@@ -0,0 +1,146 @@
+package com.microsoft.migration.assets.worker.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Meters of the thumbnail pipeline. Stage timers share one name and are told apart by the
+ * stage tag, so a dashboard can stack them to see where the time of an image goes.
+ */
+public class ThumbnailMetrics {
+    public static final String LOOKUP = "lookup";
+    public static final String DOWNLOAD = "download";
+    public static final String DECODE = "decode";
+    public static final String SCALE = "scale"; // includes the sharpening when it is folded into the kernel
+    public static final String SHARPEN = "sharpen";
+    public static final String ENCODE = "encode";
+    public static final String UPLOAD = "upload";
+    public static final String METADATA = "metadata";
+    public static final String COPY = "copy"; // thumbnails of identical content copied instead of generated
+    public static final String COMPLETED = "completed";
+    public static final String DUPLICATE = "duplicate";
+    public static final String PIPELINE_TIMER = "worker.thumbnail.pipeline";
+
+    private final MeterRegistry registry;
+    private final Map<String, Timer> stages = new ConcurrentHashMap<>();
+    private final Map<String, DistributionSummary> bytesOut = new ConcurrentHashMap<>();
+    private final Map<String, Counter> reused = new ConcurrentHashMap<>();
+    private final DistributionSummary bytesIn;
+    private final DistributionSummary sourceMegapixels;
+    private final Timer succeeded;
+    private final Timer failed;
+    private final Counter retries;
+    private final Counter nacks;
+    private final Counter deadLetters;
+
+    public ThumbnailMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.bytesIn = DistributionSummary.builder("worker.thumbnail.bytes.in")
+            .description("Size of the downloaded originals")
+            .baseUnit("bytes")
+            .publishPercentileHistogram()
+            .minimumExpectedValue(1024.0)
+            .maximumExpectedValue(1024.0 * 1024 * 1024)
+            .register(registry);
+        this.sourceMegapixels = DistributionSummary.builder("worker.thumbnail.source.megapixels")
+            .description("Dimensions of the originals, before decoder subsampling")
+            .baseUnit("megapixels")
+            .publishPercentileHistogram()
+            .minimumExpectedValue(0.01)
+            .maximumExpectedValue(400.0)
+            .register(registry);
+        this.succeeded = pipelineTimer("success");
+        this.failed = pipelineTimer("failure");
+        this.retries = Counter.builder("worker.thumbnail.retries")
+            .description("Failed attempts moved to a retry queue")
+            .register(registry);
+        this.nacks = Counter.builder("worker.thumbnail.nacks")
+            .description("Messages handed back to the broker on shutdown or when they could not be moved")
+            .register(registry);
+        this.deadLetters = Counter.builder("worker.thumbnail.dead.letters")
+            .description("Messages moved to the dead-letter queue after all attempts failed")
+            .register(registry);
+    }
+
+    /**
+     * Record the time of a stage that started at the given {@link System#nanoTime()}.
+     */
+    public void recordStage(String stage, long startNanos) {
+        stages.computeIfAbsent(stage, name -> Timer.builder("worker.thumbnail.stage")
+                .description("Time spent per image (or per rendition) in each pipeline stage")
+                .tag("stage", name)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofMinutes(2))
+                .register(registry))
+            .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Record one pipeline attempt, from delivery to its outcome.
+     */
+    public void recordAttempt(boolean success, long startNanos) {
+        (success ? succeeded : failed).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordBytesIn(long bytes) {
+        bytesIn.record(bytes);
+    }
+
+    public void recordBytesOut(String format, long bytes) {
+        bytesOut.computeIfAbsent(format, name -> DistributionSummary.builder("worker.thumbnail.bytes.out")
+                .description("Size of the encoded renditions")
+                .baseUnit("bytes")
+                .tag("format", name)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(256.0)
+                .maximumExpectedValue(64.0 * 1024 * 1024)
+                .register(registry))
+            .record(bytes);
+    }
+
+    public void recordSourceDimensions(int width, int height) {
+        sourceMegapixels.record(width * (double) height / 1_000_000);
+    }
+
+    public void retried() {
+        retries.increment();
+    }
+
+    public void nacked() {
+        nacks.increment();
+    }
+
+    public void deadLettered() {
+        deadLetters.increment();
+    }
+
+    /**
+     * Count an image whose thumbnails were not generated: already {@link #COMPLETED} for its key,
+     * or copied from a {@link #DUPLICATE} of its content.
+     */
+    public void reused(String reason) {
+        reused.computeIfAbsent(reason, name -> Counter.builder("worker.thumbnail.reused")
+                .description("Images whose existing thumbnails were reused instead of generated")
+                .tag("reason", name)
+                .register(registry))
+            .increment();
+    }
+
+    private Timer pipelineTimer(String outcome) {
+        return Timer.builder(PIPELINE_TIMER)
+            .description("Pipeline attempts from delivery to outcome, all stages and queueing included")
+            .tag("outcome", outcome)
+            .publishPercentileHistogram()
+            .minimumExpectedValue(Duration.ofMillis(10))
+            .maximumExpectedValue(Duration.ofMinutes(5))
+            .register(registry);
+    }
+}
@@ -0,0 +1,113 @@
+package com.microsoft.migration.assets.worker.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of growable byte buffers for images held in memory between pipeline stages.
+ * Acquiring never blocks: a new buffer is created when the pool is empty. On release, buffers
+ * that grew beyond the retain limit, or that would take the pool above its byte budget, are
+ * dropped instead of being kept, so an occasional large image does not stay pinned in the heap.
+ */
+public class BufferPool {
+    private static final int INITIAL_SIZE = 64 * 1024;
+
+    private final BlockingQueue<Buffer> buffers;
+    private final int maxRetainedSize;
+    private final long maxPooledBytes;
+    private final AtomicLong pooledBytes = new AtomicLong();
+
+    public BufferPool(int capacity, int maxRetainedSize, long maxPooledBytes) {
+        this.buffers = new ArrayBlockingQueue<>(Math.max(capacity, 1));
+        this.maxRetainedSize = maxRetainedSize;
+        this.maxPooledBytes = maxPooledBytes;
+    }
+
+    public Buffer acquire() {
+        Buffer buffer = buffers.poll();
+        if (buffer == null) {
+            return new Buffer(INITIAL_SIZE);
+        }
+        pooledBytes.addAndGet(-buffer.capacity());
+        return buffer;
+    }
+
+    public void release(Buffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+        buffer.reset();
+        int size = buffer.capacity();
+        if (size > maxRetainedSize) {
+            return;
+        }
+        if (pooledBytes.addAndGet(size) > maxPooledBytes || !buffers.offer(buffer)) {
+            pooledBytes.addAndGet(-size);
+        }
+    }
+
+    /**
+     * Bytes held by the buffers waiting in the pool
+     */
+    public long getPooledBytes() {
+        return pooledBytes.get();
+    }
+
+    /**
+     * Byte array output stream whose contents can be read back without copying.
+     */
+    public static class Buffer extends ByteArrayOutputStream {
+
+        Buffer(int size) {
+            super(size);
+        }
+
+        public byte[] array() {
+            return buf;
+        }
+
+        public int length() {
+            return count;
+        }
+
+        int capacity() {
+            return buf.length;
+        }
+
+        public InputStream toInputStream() {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+
+        /**
+         * Seekable view of the contents for ImageIO readers, without copying them
+         */
+        public ByteArrayImageInputStream toImageInputStream() {
+            return new ByteArrayImageInputStream(buf, 0, count);
+        }
+
+        /**
+         * Append the stream until it ends or more than {@code limit} bytes were read.
+         * Returns false when the limit was exceeded; the stream is then left positioned after
+         * the bytes held in this buffer so the caller can continue elsewhere.
+         */
+        public boolean readFrom(InputStream in, int limit) throws IOException {
+            while (count <= limit) {
+                if (count == buf.length) {
+                    buf = Arrays.copyOf(buf, (int) Math.min(Math.max(buf.length * 2L, INITIAL_SIZE), limit + 1L));
+                }
+                int read = in.read(buf, count, buf.length - count);
+                if (read < 0) {
+                    return true;
+                }
+                count += read;
+            }
+            return false;
+        }
+    }
+}
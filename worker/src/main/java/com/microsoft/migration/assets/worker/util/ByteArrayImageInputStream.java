@@ -0,0 +1,58 @@
+package com.microsoft.migration.assets.worker.util;
+
+import javax.imageio.stream.ImageInputStreamImpl;
+
+/**
+ * Seekable image input stream over bytes already in memory. Unlike a MemoryCacheImageInputStream
+ * over a ByteArrayInputStream it reads the array in place instead of caching a second copy.
+ */
+public class ByteArrayImageInputStream extends ImageInputStreamImpl {
+    private final byte[] data;
+    private final int offset;
+    private final int length;
+
+    public ByteArrayImageInputStream(byte[] data, int offset, int length) {
+        this.data = data;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public int read() {
+        if (streamPos >= length) {
+            return -1;
+        }
+        bitOffset = 0;
+        return data[offset + (int) streamPos++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (len == 0) {
+            return 0;
+        }
+        if (streamPos >= length) {
+            return -1;
+        }
+        bitOffset = 0;
+        int n = (int) Math.min(len, length - streamPos);
+        System.arraycopy(data, offset + (int) streamPos, b, off, n);
+        streamPos += n;
+        return n;
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public boolean isCached() {
+        return true;
+    }
+
+    @Override
+    public boolean isCachedMemory() {
+        return true;
+    }
+}
@@ -0,0 +1,521 @@
+package com.microsoft.migration.assets.worker.util;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.util.Arrays;
+
+/**
+ * Separable image resampler working directly on pixel arrays.
+ * <p>
+ * Each source row is unpacked to floats once, into a ring buffer holding just the rows the
+ * vertical filter window needs. Every output row is filtered vertically across the full source
+ * width and then horizontally, so the whole resize is a single pass over the source without a
+ * full-size intermediate image. Colors are filtered with premultiplied alpha. An optional
+ * sharpening step is folded into both 1-D kernels as [-a, 1+2a, -a] at the output resolution,
+ * so it costs no extra pass; {@link #sharpen} applies the same kernel in place to an image that
+ * was resized without it. Scratch buffers are kept per thread and reused; the inner loops are
+ * plain float loops the JIT can vectorize.
+ */
+public final class Resampler {
+
+    public enum Filter {
+        LANCZOS3(3.0) {
+            @Override
+            double weight(double x) {
+                x = Math.abs(x);
+                if (x < 1e-9) {
+                    return 1.0;
+                }
+                if (x >= 3.0) {
+                    return 0.0;
+                }
+                double px = Math.PI * x;
+                return 3.0 * Math.sin(px) * Math.sin(px / 3.0) / (px * px);
+            }
+        },
+        MITCHELL(2.0) {
+            @Override
+            double weight(double x) {
+                // Mitchell-Netravali with B = C = 1/3
+                final double b = 1.0 / 3.0;
+                final double c = 1.0 / 3.0;
+                x = Math.abs(x);
+                if (x < 1.0) {
+                    return ((12 - 9 * b - 6 * c) * x * x * x + (-18 + 12 * b + 6 * c) * x * x + (6 - 2 * b)) / 6.0;
+                }
+                if (x < 2.0) {
+                    return ((-b - 6 * c) * x * x * x + (6 * b + 30 * c) * x * x + (-12 * b - 48 * c) * x
+                        + (8 * b + 24 * c)) / 6.0;
+                }
+                return 0.0;
+            }
+        };
+
+        private final double radius;
+
+        Filter(double radius) {
+            this.radius = radius;
+        }
+
+        abstract double weight(double x);
+    }
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private Resampler() {
+    }
+
+    /**
+     * Resize the image to the given dimensions, sharpening by {@code sharpen} (0 for none).
+     * An image that already fits within them keeps its size instead of being scaled up.
+     * The result is a new TYPE_INT_ARGB image when the source has transparency, TYPE_INT_RGB otherwise.
+     */
+    public static BufferedImage resize(BufferedImage source, int width, int height, Filter filter, float sharpen) {
+        int srcWidth = source.getWidth();
+        int srcHeight = source.getHeight();
+        if (srcWidth <= width && srcHeight <= height) {
+            width = srcWidth;
+            height = srcHeight;
+        }
+        boolean alpha = source.getColorModel().hasAlpha();
+        int channels = alpha ? 4 : 3; // premultiplied a, r, g, b or just r, g, b
+
+        BufferedImage result = new BufferedImage(width, height,
+            alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        int[] out = ((DataBufferInt) result.getRaster().getDataBuffer()).getData();
+        Scratch scratch = SCRATCH.get();
+
+        if (width == srcWidth && height == srcHeight) {
+            // Nothing to resample: convert the pixels, then sharpen them in place
+            int lanes = width * channels;
+            scratch.ensure(srcWidth, lanes, 1, lanes);
+            RowReader reader = RowReader.of(source, alpha, scratch);
+            for (int y = 0; y < height; y++) {
+                reader.read(y, scratch.filtered, 0);
+                pack(scratch.filtered, scratch.levels, out, y * width, width, alpha);
+            }
+            sharpen(result, sharpen);
+            return result;
+        }
+
+        Contributions horizontal = Contributions.of(srcWidth, width, filter, sharpen);
+        Contributions vertical = Contributions.of(srcHeight, height, filter, sharpen);
+
+        int lanes = srcWidth * channels;
+        int ringSize = vertical.maxCount;
+        scratch.ensure(srcWidth, lanes, ringSize, width * channels);
+        float[] ring = scratch.ring;
+        int[] ringRow = scratch.ringRow;
+        Arrays.fill(ringRow, 0, ringSize, -1);
+        float[] acc = scratch.acc;
+        float[] filtered = scratch.filtered;
+        RowReader reader = RowReader.of(source, alpha, scratch);
+
+        for (int y = 0; y < height; y++) {
+            int first = vertical.first[y];
+            int count = vertical.count[y];
+            int weightOffset = y * vertical.stride;
+
+            // Vertical pass over whole source rows: a straight multiply-add over the row, which vectorizes
+            for (int k = 0; k < count; k++) {
+                int row = first + k;
+                int slot = row % ringSize;
+                int slotOffset = slot * lanes;
+                if (ringRow[slot] != row) {
+                    reader.read(row, ring, slotOffset);
+                    ringRow[slot] = row;
+                }
+                float w = vertical.weights[weightOffset + k];
+                if (k == 0) {
+                    for (int i = 0; i < lanes; i++) {
+                        acc[i] = w * ring[slotOffset + i];
+                    }
+                } else {
+                    for (int i = 0; i < lanes; i++) {
+                        acc[i] += w * ring[slotOffset + i];
+                    }
+                }
+            }
+
+            // Horizontal pass on the filtered row
+            if (alpha) {
+                filterRowArgb(acc, horizontal, filtered, width);
+            } else {
+                filterRowRgb(acc, horizontal, filtered, width);
+            }
+            pack(filtered, scratch.levels, out, y * width, width, alpha);
+        }
+        return result;
+    }
+
+    /**
+     * Sharpen an image in place by {@code amount}, with the [-a, 1+2a, -a] kernel per axis that
+     * {@link #resize} folds into its filter. Cascading renditions need each one unsharpened to scale
+     * the next from; this fixed 3-tap pass then sharpens it for far less than a resize to the same size.
+     * The image must be TYPE_INT_RGB or TYPE_INT_ARGB as returned by resize.
+     */
+    public static void sharpen(BufferedImage image, float amount) {
+        int[] pixels = packedPixels(image);
+        if (amount == 0f) {
+            return;
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        boolean alpha = image.getType() == BufferedImage.TYPE_INT_ARGB;
+        int channels = alpha ? 4 : 3;
+        int lanes = width * channels;
+        int last = lanes - channels;
+        float center = 1 + 2 * amount;
+
+        Scratch scratch = SCRATCH.get();
+        scratch.ensure(width, lanes, 3, lanes);
+        float[] ring = scratch.ring; // rows y - 1, y and y + 1, each at (row % 3) * lanes
+        float[] acc = scratch.acc;
+        float[] filtered = scratch.filtered;
+        RowReader reader = RowReader.of(image, alpha, scratch);
+
+        reader.read(0, ring, 0);
+        for (int y = 0; y < height; y++) {
+            // The next row is read before this one is overwritten; at the edges the row itself stands in
+            if (y + 1 < height) {
+                reader.read(y + 1, ring, ((y + 1) % 3) * lanes);
+            }
+            int current = (y % 3) * lanes;
+            int previous = (Math.max(y - 1, 0) % 3) * lanes;
+            int next = (Math.min(y + 1, height - 1) % 3) * lanes;
+            for (int i = 0; i < lanes; i++) {
+                acc[i] = center * ring[current + i] - amount * (ring[previous + i] + ring[next + i]);
+            }
+
+            for (int i = channels; i < last; i++) {
+                filtered[i] = center * acc[i] - amount * (acc[i - channels] + acc[i + channels]);
+            }
+            for (int c = 0; c < channels; c++) {
+                filtered[c] = center * acc[c] - amount * (acc[c] + acc[Math.min(c + channels, last + c)]);
+                filtered[last + c] = center * acc[last + c] - amount * (acc[Math.max(last + c - channels, c)] + acc[last + c]);
+            }
+            pack(filtered, scratch.levels, pixels, y * width, width, alpha);
+        }
+    }
+
+    private static int[] packedPixels(BufferedImage image) {
+        int type = image.getType();
+        Raster raster = image.getRaster();
+        if ((type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB)
+                && raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0
+                && raster.getDataBuffer() instanceof DataBufferInt data
+                && raster.getSampleModel() instanceof SinglePixelPackedSampleModel sampleModel
+                && sampleModel.getScanlineStride() == image.getWidth()) {
+            return data.getData();
+        }
+        throw new IllegalArgumentException("Expected a TYPE_INT_RGB or TYPE_INT_ARGB image of its own raster, got type " + type);
+    }
+
+    private static void filterRowRgb(float[] row, Contributions horizontal, float[] filtered, int width) {
+        for (int x = 0, o = 0; x < width; x++, o += 3) {
+            int count = horizontal.count[x];
+            int weightOffset = x * horizontal.stride;
+            float r = 0, g = 0, b = 0;
+            for (int k = 0, i = horizontal.first[x] * 3; k < count; k++, i += 3) {
+                float w = horizontal.weights[weightOffset + k];
+                r += w * row[i];
+                g += w * row[i + 1];
+                b += w * row[i + 2];
+            }
+            filtered[o] = r;
+            filtered[o + 1] = g;
+            filtered[o + 2] = b;
+        }
+    }
+
+    private static void filterRowArgb(float[] row, Contributions horizontal, float[] filtered, int width) {
+        for (int x = 0, o = 0; x < width; x++, o += 4) {
+            int count = horizontal.count[x];
+            int weightOffset = x * horizontal.stride;
+            float a = 0, r = 0, g = 0, b = 0;
+            for (int k = 0, i = horizontal.first[x] * 4; k < count; k++, i += 4) {
+                float w = horizontal.weights[weightOffset + k];
+                a += w * row[i];
+                r += w * row[i + 1];
+                g += w * row[i + 2];
+                b += w * row[i + 3];
+            }
+            filtered[o] = a;
+            filtered[o + 1] = r;
+            filtered[o + 2] = g;
+            filtered[o + 3] = b;
+        }
+    }
+
+    /**
+     * Round and clamp a filtered row to 8-bit channels and pack it into pixels, undoing the alpha
+     * premultiplication. Clamping and conversion run as one loop over the whole row, which the JIT
+     * vectorizes; per channel they cost more than the filtering itself.
+     */
+    private static void pack(float[] row, int[] levels, int[] out, int outOffset, int width, boolean alpha) {
+        int lanes = width * (alpha ? 4 : 3);
+        if (alpha) {
+            for (int i = 0; i < lanes; i += 4) {
+                float a = Math.min(Math.max(row[i], 0f), 1f);
+                float scale = a == 0f ? 0f : 1f / a;
+                row[i] = a * 255f;
+                row[i + 1] *= scale;
+                row[i + 2] *= scale;
+                row[i + 3] *= scale;
+            }
+        }
+        for (int i = 0; i < lanes; i++) {
+            levels[i] = (int) Math.min(Math.max(row[i] + 0.5f, 0f), 255f);
+        }
+        if (alpha) {
+            for (int x = 0, i = 0; x < width; x++, i += 4) {
+                out[outOffset + x] = (levels[i] << 24) | (levels[i + 1] << 16) | (levels[i + 2] << 8) | levels[i + 3];
+            }
+        } else {
+            for (int x = 0, i = 0; x < width; x++, i += 3) {
+                out[outOffset + x] = 0xff000000 | (levels[i] << 16) | (levels[i + 1] << 8) | levels[i + 2];
+            }
+        }
+    }
+
+    /**
+     * Filter taps of every output position along one axis, dense over [first, first + count).
+     */
+    static final class Contributions {
+        final int[] first;
+        final int[] count;
+        final float[] weights; // row i starts at i * stride
+        final int stride;
+        final int maxCount;
+
+        private Contributions(int[] first, int[] count, float[] weights, int stride) {
+            this.first = first;
+            this.count = count;
+            this.weights = weights;
+            this.stride = stride;
+            int max = 1;
+            for (int c : count) {
+                max = Math.max(max, c);
+            }
+            this.maxCount = max;
+        }
+
+        static Contributions of(int srcLength, int dstLength, Filter filter, float sharpen) {
+            double scale = (double) dstLength / srcLength;
+            double filterScale = Math.min(scale, 1.0); // widen the kernel when downscaling
+            double support = filter.radius / filterScale;
+            int baseStride = (int) Math.ceil(support * 2) + 2;
+
+            int[] baseFirst = new int[dstLength];
+            int[] baseCount = new int[dstLength];
+            double[] baseWeights = new double[dstLength * baseStride];
+            for (int i = 0; i < dstLength; i++) {
+                if (srcLength == dstLength) {
+                    // Same size: copy exactly, even for filters that are not interpolating (Mitchell)
+                    baseWeights[i * baseStride] = 1;
+                    baseFirst[i] = i;
+                    baseCount[i] = 1;
+                    continue;
+                }
+                double center = (i + 0.5) / scale - 0.5;
+                int lo = Math.max((int) Math.ceil(center - support), 0);
+                int hi = Math.min((int) Math.floor(center + support), srcLength - 1);
+                if (hi < lo) {
+                    lo = hi = Math.min(Math.max((int) Math.round(center), 0), srcLength - 1);
+                }
+                double sum = 0;
+                for (int j = lo; j <= hi; j++) {
+                    double w = filter.weight((j - center) * filterScale);
+                    baseWeights[i * baseStride + j - lo] = w;
+                    sum += w;
+                }
+                if (sum == 0) {
+                    baseWeights[i * baseStride] = 1;
+                    hi = lo;
+                    sum = 1;
+                }
+                for (int j = lo; j <= hi; j++) {
+                    baseWeights[i * baseStride + j - lo] /= sum;
+                }
+                // Drop zero taps at both ends, e.g. where Lanczos crosses zero
+                int skip = 0;
+                while (lo + skip < hi && Math.abs(baseWeights[i * baseStride + skip]) < 1e-7) {
+                    skip++;
+                }
+                while (hi > lo + skip && Math.abs(baseWeights[i * baseStride + hi - lo]) < 1e-7) {
+                    hi--;
+                }
+                if (skip > 0) {
+                    System.arraycopy(baseWeights, i * baseStride + skip, baseWeights, i * baseStride, hi - lo - skip + 1);
+                    lo += skip;
+                }
+                baseFirst[i] = lo;
+                baseCount[i] = hi - lo + 1;
+            }
+
+            if (sharpen == 0f) {
+                float[] weights = new float[dstLength * baseStride];
+                for (int i = 0; i < weights.length; i++) {
+                    weights[i] = (float) baseWeights[i];
+                }
+                return new Contributions(baseFirst, baseCount, weights, baseStride);
+            }
+
+            // Fold [-a, 1+2a, -a] over neighbouring output positions into each row of taps;
+            // at the edges the missing neighbour is the position itself
+            int stride = baseStride * 3;
+            int[] first = new int[dstLength];
+            int[] count = new int[dstLength];
+            float[] weights = new float[dstLength * stride];
+            double[] combined = new double[stride];
+            for (int i = 0; i < dstLength; i++) {
+                int prev = Math.max(i - 1, 0);
+                int next = Math.min(i + 1, dstLength - 1);
+                int lo = Math.min(baseFirst[prev], baseFirst[i]);
+                int hi = Math.max(baseFirst[next] + baseCount[next], baseFirst[i] + baseCount[i]) - 1;
+                Arrays.fill(combined, 0, hi - lo + 1, 0.0);
+                accumulate(combined, lo, baseWeights, baseStride, baseFirst, baseCount, prev, -sharpen);
+                accumulate(combined, lo, baseWeights, baseStride, baseFirst, baseCount, i, 1 + 2 * sharpen);
+                accumulate(combined, lo, baseWeights, baseStride, baseFirst, baseCount, next, -sharpen);
+                for (int j = 0; j <= hi - lo; j++) {
+                    weights[i * stride + j] = (float) combined[j];
+                }
+                first[i] = lo;
+                count[i] = hi - lo + 1;
+            }
+            return new Contributions(first, count, weights, stride);
+        }
+
+        private static void accumulate(double[] combined, int lo, double[] baseWeights, int baseStride,
+                                       int[] baseFirst, int[] baseCount, int index, double factor) {
+            int offset = baseFirst[index] - lo;
+            for (int j = 0; j < baseCount[index]; j++) {
+                combined[offset + j] += factor * baseWeights[index * baseStride + j];
+            }
+        }
+    }
+
+    /**
+     * Unpacks source rows to floats, premultiplied when the image has alpha. The common image
+     * types are read straight from their raster.
+     */
+    private static final class RowReader {
+        private final BufferedImage image;
+        private final boolean alpha;
+        private final int[] intPixels; // TYPE_INT_RGB/ARGB backing array, or null
+        private final byte[] bytePixels; // TYPE_3BYTE_BGR/4BYTE_ABGR backing array, or null
+        private final int scanline;
+        private final int[] row;
+
+        private RowReader(BufferedImage image, boolean alpha, int[] intPixels, byte[] bytePixels, int scanline, int[] row) {
+            this.image = image;
+            this.alpha = alpha;
+            this.intPixels = intPixels;
+            this.bytePixels = bytePixels;
+            this.scanline = scanline;
+            this.row = row;
+        }
+
+        static RowReader of(BufferedImage image, boolean alpha, Scratch scratch) {
+            Raster raster = image.getRaster();
+            boolean untranslated = raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0;
+            int type = image.getType();
+            if (untranslated && (type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB)
+                    && raster.getDataBuffer() instanceof DataBufferInt data
+                    && raster.getSampleModel() instanceof SinglePixelPackedSampleModel sampleModel) {
+                return new RowReader(image, alpha, data.getData(), null, sampleModel.getScanlineStride(), scratch.row);
+            }
+            // As decoded from JPEG, and from PNG with transparency
+            if (untranslated && (type == BufferedImage.TYPE_3BYTE_BGR || type == BufferedImage.TYPE_4BYTE_ABGR)
+                    && raster.getDataBuffer() instanceof DataBufferByte data
+                    && raster.getSampleModel() instanceof ComponentSampleModel sampleModel) {
+                return new RowReader(image, alpha, null, data.getData(), sampleModel.getScanlineStride(), scratch.row);
+            }
+            return new RowReader(image, alpha, null, null, 0, scratch.row);
+        }
+
+        void read(int y, float[] dest, int offset) {
+            int width = image.getWidth();
+            if (bytePixels != null && alpha) {
+                // a, b, g, r bytes
+                for (int x = 0, i = y * scanline, o = offset; x < width; x++, i += 4, o += 4) {
+                    float a = (bytePixels[i] & 0xff) / 255f;
+                    dest[o] = a;
+                    dest[o + 1] = (bytePixels[i + 3] & 0xff) * a;
+                    dest[o + 2] = (bytePixels[i + 2] & 0xff) * a;
+                    dest[o + 3] = (bytePixels[i + 1] & 0xff) * a;
+                }
+                return;
+            }
+            if (bytePixels != null) {
+                // Opaque, the bytes are already in b, g, r order
+                for (int x = 0, i = y * scanline, o = offset; x < width; x++, i += 3, o += 3) {
+                    dest[o] = bytePixels[i + 2] & 0xff;
+                    dest[o + 1] = bytePixels[i + 1] & 0xff;
+                    dest[o + 2] = bytePixels[i] & 0xff;
+                }
+                return;
+            }
+
+            int[] pixels = intPixels;
+            int start = y * scanline;
+            if (pixels == null) {
+                image.getRGB(0, y, width, 1, row, 0, width);
+                pixels = row;
+                start = 0;
+            }
+            if (alpha) {
+                for (int x = 0, o = offset; x < width; x++, o += 4) {
+                    int p = pixels[start + x];
+                    float a = (p >>> 24) / 255f;
+                    dest[o] = a;
+                    dest[o + 1] = ((p >> 16) & 0xff) * a;
+                    dest[o + 2] = ((p >> 8) & 0xff) * a;
+                    dest[o + 3] = (p & 0xff) * a;
+                }
+            } else {
+                for (int x = 0, o = offset; x < width; x++, o += 3) {
+                    int p = pixels[start + x];
+                    dest[o] = (p >> 16) & 0xff;
+                    dest[o + 1] = (p >> 8) & 0xff;
+                    dest[o + 2] = p & 0xff;
+                }
+            }
+        }
+    }
+
+    /**
+     * Per-thread buffers, grown on demand and reused across resizes.
+     */
+    private static final class Scratch {
+        int[] row = new int[0];
+        float[] ring = new float[0];
+        int[] ringRow = new int[0];
+        float[] acc = new float[0];
+        float[] filtered = new float[0];
+        int[] levels = new int[0];
+
+        void ensure(int srcWidth, int lanes, int ringSize, int outLanes) {
+            if (row.length < srcWidth) {
+                row = new int[srcWidth];
+            }
+            if (ring.length < lanes * ringSize) {
+                ring = new float[lanes * ringSize];
+            }
+            if (ringRow.length < ringSize) {
+                ringRow = new int[ringSize];
+            }
+            if (acc.length < lanes) {
+                acc = new float[lanes];
+            }
+            if (filtered.length < outLanes) {
+                filtered = new float[outLanes];
+                levels = new int[outLanes];
+            }
+        }
+    }
+}
@@ -12,6 +12,17 @@ public class StorageUtil {
         return key + "_thumbnail";
     }
 
+    /**
+     * Get the key of the thumbnail rendition with the given maximum dimension
+     */
+    public static String getThumbnailKey(String key, int size) {
+        int dotIndex = key.lastIndexOf('.');
+        if (dotIndex > 0) {
+            return key.substring(0, dotIndex) + "_thumbnail_" + size + key.substring(dotIndex);
+        }
+        return key + "_thumbnail_" + size;
+    }
+
     /**
      * Get file extension from a key or filename
      */
@@ -19,4 +30,12 @@ public class StorageUtil {
         int dotIndex = filename.lastIndexOf('.');
         return dotIndex > 0 ? filename.substring(dotIndex) : "";
     }
+
+    /**
+     * Replace the extension of a key, e.g. to store another encoding of the same image
+     */
+    public static String replaceExtension(String key, String extension) {
+        int dotIndex = key.lastIndexOf('.');
+        return (dotIndex > 0 ? key.substring(0, dotIndex) : key) + extension;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,225 @@
+package com.microsoft.migration.assets.worker.service;
+
+import com.microsoft.migration.assets.worker.model.ImageMetadata;
+import com.microsoft.migration.assets.worker.model.ImageProcessingMessage;
+import com.microsoft.migration.assets.worker.util.BufferPool;
+import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.amqp.AmqpTimeoutException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.microsoft.migration.assets.worker.config.RabbitConfig.FAILURE_HEADER;
+import static com.microsoft.migration.assets.worker.config.RabbitConfig.RETRY_ATTEMPT_HEADER;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Where a failed image goes: the retry queue of its attempt, then the dead-letter queue, and
+ * the delivery is only acknowledged once the broker confirmed the copy.
+ */
+class RetryRoutingTests {
+
+	private static final long DELIVERY_TAG = 7;
+
+	private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+	private final RabbitTemplate rabbitTemplate = mock(RabbitTemplate.class);
+	private final RabbitOperations operations = mock(RabbitOperations.class);
+	private final Channel channel = mock(Channel.class);
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private FailingProcessingService service;
+
+	@BeforeEach
+	void setUp() {
+		doAnswer(invocation -> invocation.<RabbitOperations.OperationsCallback<?>>getArgument(0).doInRabbit(operations))
+				.when(rabbitTemplate).invoke(any());
+		when(channel.isOpen()).thenReturn(true);
+		service = new FailingProcessingService();
+		ReflectionTestUtils.setField(service, "rabbitTemplate", rabbitTemplate);
+		ReflectionTestUtils.setField(service, "ioExecutor", executor);
+		ReflectionTestUtils.setField(service, "cpuExecutor", executor);
+		ReflectionTestUtils.setField(service, "bufferPool", new BufferPool(4, 1024 * 1024, 4 * 1024 * 1024));
+		ReflectionTestUtils.setField(service, "thumbnailEncoders", mock(ThumbnailEncoders.class));
+		ReflectionTestUtils.setField(service, "meterRegistry", meterRegistry);
+		ReflectionTestUtils.setField(service, "maxInFlight", 4);
+		ReflectionTestUtils.setField(service, "renditions", List.of(150));
+		ReflectionTestUtils.setField(service, "defaultRendition", 150);
+		ReflectionTestUtils.setField(service, "resampler", "legacy");
+		ReflectionTestUtils.setField(service, "inMemoryThreshold", DataSize.ofMegabytes(1));
+		ReflectionTestUtils.setField(service, "storageType", "s3");
+		ReflectionTestUtils.setField(service, "brokerBackoff", true);
+		ReflectionTestUtils.setField(service, "confirmTimeout", Duration.ofSeconds(1));
+		service.initPipeline();
+	}
+
+	@AfterEach
+	void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	void firstFailureGoesToFirstRetryQueue() throws Exception {
+		Message republished = process(null, "image-processing.s3.retry.1");
+
+		assertThat((Integer) republished.getMessageProperties().getHeader(RETRY_ATTEMPT_HEADER)).isEqualTo(2);
+		assertThat(republished.getMessageProperties().getHeaders()).doesNotContainKey(FAILURE_HEADER);
+	}
+
+	@Test
+	void retriedFailureGoesToNextRetryQueue() throws Exception {
+		Message republished = process(2, "image-processing.s3.retry.2");
+
+		assertThat((Integer) republished.getMessageProperties().getHeader(RETRY_ATTEMPT_HEADER)).isEqualTo(3);
+	}
+
+	@Test
+	void lastAttemptGoesToDeadLetterQueue() throws Exception {
+		Message republished = process(3, "image-processing.s3.dlq");
+
+		assertThat((Integer) republished.getMessageProperties().getHeader(RETRY_ATTEMPT_HEADER)).isEqualTo(3);
+		assertThat((String) republished.getMessageProperties().getHeader(FAILURE_HEADER)).contains("storage unavailable");
+	}
+
+	@Test
+	void withoutBrokerBackoffRetriesGoBackToProcessingQueue() throws Exception {
+		ReflectionTestUtils.setField(service, "brokerBackoff", false);
+
+		Message republished = process(1, "image-processing.s3");
+
+		assertThat((Integer) republished.getMessageProperties().getHeader(RETRY_ATTEMPT_HEADER)).isEqualTo(2);
+	}
+
+	@Test
+	void unconfirmedRetryHandsDeliveryBack() throws Exception {
+		doThrow(new AmqpTimeoutException("no confirm")).when(operations).waitForConfirmsOrDie(anyLong());
+
+		service.processImage(message(), channel, DELIVERY_TAG, null);
+
+		verify(channel, timeout(5000)).basicNack(DELIVERY_TAG, false, true);
+		verify(channel, never()).basicAck(anyLong(), anyBoolean());
+	}
+
+	@Test
+	void closedChannelIsNotRepublished() throws Exception {
+		when(channel.isOpen()).thenReturn(false);
+
+		service.processImage(message(), channel, DELIVERY_TAG, null);
+
+		awaitNothingInFlight();
+		verify(channel).isOpen();
+		verify(rabbitTemplate, never()).invoke(any());
+		verify(channel, never()).basicAck(anyLong(), anyBoolean());
+	}
+
+	/**
+	 * Wait until the delivery released its in-flight permit, which it does last whichever way it went.
+	 */
+	private void awaitNothingInFlight() throws InterruptedException {
+		long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+		while (meterRegistry.get("worker.thumbnail.in.flight").gauge().value() > 0) {
+			assertThat(System.nanoTime()).as("in-flight permit released in time").isLessThan(deadline);
+			Thread.sleep(10);
+		}
+	}
+
+	/**
+	 * Process a delivery that fails and return the copy published to the expected queue,
+	 * after checking it was acknowledged only once the broker confirmed that copy.
+	 */
+	private Message process(Integer attempt, String expectedQueue) throws Exception {
+		service.processImage(message(), channel, DELIVERY_TAG, attempt);
+
+		verify(channel, timeout(5000)).basicAck(DELIVERY_TAG, false);
+		ArgumentCaptor<MessagePostProcessor> postProcessor = ArgumentCaptor.forClass(MessagePostProcessor.class);
+		InOrder inOrder = inOrder(operations, channel);
+		inOrder.verify(operations).convertAndSend(eq(""), eq(expectedQueue), any(ImageProcessingMessage.class),
+				postProcessor.capture());
+		inOrder.verify(operations).waitForConfirmsOrDie(1000);
+		inOrder.verify(channel).basicAck(DELIVERY_TAG, false);
+		return postProcessor.getValue().postProcessMessage(new Message(new byte[0], new MessageProperties()));
+	}
+
+	private static ImageProcessingMessage message() {
+		return new ImageProcessingMessage("photo.jpg", "image/jpeg", "s3", 100, null);
+	}
+
+	/**
+	 * Storage whose originals cannot be read, so every attempt fails
+	 */
+	private static class FailingProcessingService extends AbstractFileProcessingService {
+
+		@Override
+		public InputStream openOriginal(String key) throws IOException {
+			throw new IOException("storage unavailable");
+		}
+
+		@Override
+		public void downloadOriginal(String key, Path destination) throws IOException {
+			throw new IOException("storage unavailable");
+		}
+
+		@Override
+		public void uploadThumbnail(byte[] content, int length, String key, String contentType) {
+		}
+
+		@Override
+		public void copyThumbnail(String sourceKey, String targetKey) {
+		}
+
+		@Override
+		public void recordThumbnails(String thumbnailKey, Map<Integer, String> renditionKeys, String contentHash,
+									 String thumbnailSettings) {
+		}
+
+		@Override
+		public Optional<ImageMetadata> findThumbnails(String key) {
+			return Optional.empty();
+		}
+
+		@Override
+		public Optional<ImageMetadata> findThumbnailsByContent(String contentHash, String thumbnailSettings) {
+			return Optional.empty();
+		}
+
+		@Override
+		public String getStorageType() {
+			return "s3";
+		}
+
+		@Override
+		protected String generateUrl(String key) {
+			return key;
+		}
+	}
+}
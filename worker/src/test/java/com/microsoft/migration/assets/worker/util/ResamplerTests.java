@@ -0,0 +1,253 @@
+package com.microsoft.migration.assets.worker.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class ResamplerTests {
+
+	private static final int[][] SIZES = {{1200, 150}, {640, 480}, {100, 99}, {7, 3}, {1, 5}, {3, 3}, {10, 25}};
+
+	@Test
+	void kernelWeightsSumToOne() {
+		for (Resampler.Filter filter : Resampler.Filter.values()) {
+			for (float sharpen : new float[] {0f, 0.15f, 0.5f}) {
+				for (int[] size : SIZES) {
+					Resampler.Contributions contributions = Resampler.Contributions.of(size[0], size[1], filter, sharpen);
+					for (int i = 0; i < size[1]; i++) {
+						double sum = 0;
+						for (int k = 0; k < contributions.count[i]; k++) {
+							sum += contributions.weights[i * contributions.stride + k];
+						}
+						assertThat(sum).as("%s sharpen %s, %d -> %d, position %d", filter, sharpen, size[0], size[1], i)
+								.isCloseTo(1.0, within(1e-4));
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	void tapsStayWithinTheSource() {
+		for (Resampler.Filter filter : Resampler.Filter.values()) {
+			for (int[] size : SIZES) {
+				Resampler.Contributions contributions = Resampler.Contributions.of(size[0], size[1], filter, 0.15f);
+				for (int i = 0; i < size[1]; i++) {
+					assertThat(contributions.first[i]).isGreaterThanOrEqualTo(0);
+					assertThat(contributions.first[i] + contributions.count[i]).isLessThanOrEqualTo(size[0]);
+					assertThat(contributions.count[i]).isPositive();
+				}
+			}
+		}
+	}
+
+	@Test
+	void uniformImageStaysUniformUpToTheEdges() {
+		BufferedImage source = filled(97, 61, BufferedImage.TYPE_INT_RGB, 0xff3c78b4);
+
+		for (Resampler.Filter filter : Resampler.Filter.values()) {
+			BufferedImage result = Resampler.resize(source, 30, 19, filter, 0.15f);
+
+			for (int y = 0; y < result.getHeight(); y++) {
+				for (int x = 0; x < result.getWidth(); x++) {
+					assertThat(result.getRGB(x, y)).as("%s at %d,%d", filter, x, y).isEqualTo(0xff3c78b4);
+				}
+			}
+		}
+	}
+
+	@Test
+	void sharpenedHardEdgeIsClampedToTheColorRange() {
+		BufferedImage source = new BufferedImage(64, 64, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < 64; y++) {
+			for (int x = 0; x < 64; x++) {
+				source.setRGB(x, y, x < 32 ? 0xff000000 : 0xffffffff);
+			}
+		}
+
+		BufferedImage result = Resampler.resize(source, 16, 16, Resampler.Filter.LANCZOS3, 1f);
+
+		// Overshoot at the step saturates instead of wrapping around
+		assertThat(result.getRGB(0, 8)).isEqualTo(0xff000000);
+		assertThat(result.getRGB(15, 8)).isEqualTo(0xffffffff);
+	}
+
+	@Test
+	void transparentPixelsDoNotBleedColor() {
+		BufferedImage source = new BufferedImage(40, 40, BufferedImage.TYPE_INT_ARGB);
+		for (int y = 0; y < 40; y++) {
+			for (int x = 0; x < 40; x++) {
+				// Left half transparent red, right half opaque blue
+				source.setRGB(x, y, x < 20 ? 0x00ff0000 : 0xff0000ff);
+			}
+		}
+
+		BufferedImage result = Resampler.resize(source, 10, 10, Resampler.Filter.MITCHELL, 0f);
+
+		assertThat(result.getType()).isEqualTo(BufferedImage.TYPE_INT_ARGB);
+		assertThat(result.getRGB(0, 5) >>> 24).isZero();
+		for (int x = 0; x < 10; x++) {
+			int pixel = result.getRGB(x, 5);
+			if (pixel >>> 24 != 0) {
+				assertThat((pixel >> 16) & 0xff).as("red at %d", x).isZero();
+				assertThat(pixel & 0xff).as("blue at %d", x).isEqualTo(255);
+			}
+		}
+		assertThat(result.getRGB(9, 5)).isEqualTo(0xff0000ff);
+	}
+
+	@Test
+	void opaqueImageGivesOpaqueResult() {
+		BufferedImage result = Resampler.resize(filled(20, 20, BufferedImage.TYPE_3BYTE_BGR, 0xff102030), 5, 5,
+				Resampler.Filter.MITCHELL, 0.15f);
+
+		assertThat(result.getType()).isEqualTo(BufferedImage.TYPE_INT_RGB);
+		assertThat(result.getRGB(2, 2)).isEqualTo(0xff102030);
+	}
+
+	@Test
+	void resizesSinglePixelRowsAndColumns() {
+		BufferedImage column = filled(1, 300, BufferedImage.TYPE_INT_RGB, 0xff808080);
+		BufferedImage row = filled(300, 1, BufferedImage.TYPE_INT_RGB, 0xff808080);
+
+		BufferedImage narrow = Resampler.resize(column, 1, 30, Resampler.Filter.LANCZOS3, 0.15f);
+		BufferedImage flat = Resampler.resize(row, 30, 1, Resampler.Filter.LANCZOS3, 0.15f);
+
+		assertThat(narrow.getWidth()).isEqualTo(1);
+		assertThat(narrow.getHeight()).isEqualTo(30);
+		assertThat(narrow.getRGB(0, 29)).isEqualTo(0xff808080);
+		assertThat(flat.getWidth()).isEqualTo(30);
+		assertThat(flat.getHeight()).isEqualTo(1);
+		assertThat(flat.getRGB(29, 0)).isEqualTo(0xff808080);
+	}
+
+	@Test
+	void doesNotScaleUpSmallerImages() {
+		BufferedImage source = filled(40, 30, BufferedImage.TYPE_INT_RGB, 0xff336699);
+
+		BufferedImage result = Resampler.resize(source, 400, 300, Resampler.Filter.MITCHELL, 0f);
+
+		assertThat(result.getWidth()).isEqualTo(40);
+		assertThat(result.getHeight()).isEqualTo(30);
+		assertThat(result.getRGB(39, 29)).isEqualTo(0xff336699);
+	}
+
+	@Test
+	void sharpenAppliesThreeTapKernelPerAxis() {
+		float amount = 0.5f;
+		for (int type : new int[] {BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB}) {
+			BufferedImage source = pattern(53, 37, type);
+			BufferedImage image = pattern(53, 37, type);
+
+			Resampler.sharpen(image, amount);
+
+			// [-a, 1+2a, -a] across and down, on premultiplied colors, repeating the edge pixels
+			float[] taps = {-amount, 1 + 2 * amount, -amount};
+			for (int y = 0; y < 37; y++) {
+				for (int x = 0; x < 53; x++) {
+					float[] sum = new float[4];
+					for (int dy = -1; dy <= 1; dy++) {
+						for (int dx = -1; dx <= 1; dx++) {
+							int p = source.getRGB(Math.min(Math.max(x + dx, 0), 52), Math.min(Math.max(y + dy, 0), 36));
+							float a = (p >>> 24) / 255f;
+							float w = taps[dx + 1] * taps[dy + 1];
+							sum[0] += w * a;
+							sum[1] += w * ((p >> 16) & 0xff) * a;
+							sum[2] += w * ((p >> 8) & 0xff) * a;
+							sum[3] += w * (p & 0xff) * a;
+						}
+					}
+					float a = Math.min(Math.max(sum[0], 0f), 1f);
+					int actual = image.getRGB(x, y);
+					assertThat((actual >>> 24) / 255f).as("alpha of type %d at %d,%d", type, x, y).isCloseTo(a, within(1 / 255f));
+					for (int c = 1; c < 4; c++) {
+						float expected = a == 0 ? 0 : Math.min(Math.max(sum[c] / a, 0f), 255f);
+						assertThat((float) ((actual >> (24 - 8 * c)) & 0xff)).as("channel %d of type %d at %d,%d", c, type, x, y)
+								.isCloseTo(expected, within(1f));
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	void sameSizeResizeOnlySharpens() {
+		BufferedImage source = pattern(40, 30, BufferedImage.TYPE_INT_RGB);
+		BufferedImage sharpened = pattern(40, 30, BufferedImage.TYPE_INT_RGB);
+		Resampler.sharpen(sharpened, 0.15f);
+
+		BufferedImage result = Resampler.resize(source, 40, 30, Resampler.Filter.LANCZOS3, 0.15f);
+		BufferedImage copy = Resampler.resize(source, 40, 30, Resampler.Filter.LANCZOS3, 0f);
+
+		for (int y = 0; y < 30; y++) {
+			for (int x = 0; x < 40; x++) {
+				assertThat(result.getRGB(x, y)).isEqualTo(sharpened.getRGB(x, y));
+				assertThat(copy.getRGB(x, y)).isEqualTo(source.getRGB(x, y));
+			}
+		}
+	}
+
+	@Test
+	void byteAndIntRastersGiveTheSameResult() {
+		BufferedImage ints = pattern(61, 47, BufferedImage.TYPE_INT_ARGB);
+		BufferedImage bytes = new BufferedImage(61, 47, BufferedImage.TYPE_4BYTE_ABGR);
+		bytes.getGraphics().drawImage(ints, 0, 0, null);
+
+		BufferedImage fromInts = Resampler.resize(ints, 20, 15, Resampler.Filter.MITCHELL, 0.15f);
+		BufferedImage fromBytes = Resampler.resize(bytes, 20, 15, Resampler.Filter.MITCHELL, 0.15f);
+
+		for (int y = 0; y < 15; y++) {
+			for (int x = 0; x < 20; x++) {
+				for (int shift = 0; shift < 32; shift += 8) {
+					assertThat((fromBytes.getRGB(x, y) >>> shift) & 0xff).as("shift %d at %d,%d", shift, x, y)
+							.isCloseTo((fromInts.getRGB(x, y) >>> shift) & 0xff, within(1));
+				}
+			}
+		}
+	}
+
+	@Test
+	void sharpenKeepsUniformImagesAndSinglePixelRows() {
+		BufferedImage uniform = filled(20, 10, BufferedImage.TYPE_INT_ARGB, 0x80406080);
+		BufferedImage row = filled(9, 1, BufferedImage.TYPE_INT_RGB, 0xff336699);
+
+		Resampler.sharpen(uniform, 0.15f);
+		Resampler.sharpen(row, 0.15f);
+
+		assertThat(uniform.getRGB(0, 0)).isEqualTo(0x80406080);
+		assertThat(uniform.getRGB(19, 9)).isEqualTo(0x80406080);
+		assertThat(row.getRGB(8, 0)).isEqualTo(0xff336699);
+	}
+
+	@Test
+	void sharpenRejectsOtherImageTypes() {
+		BufferedImage decoded = filled(4, 4, BufferedImage.TYPE_3BYTE_BGR, 0xff102030);
+
+		assertThatThrownBy(() -> Resampler.sharpen(decoded, 0.15f)).isInstanceOf(IllegalArgumentException.class);
+	}
+
+	private static BufferedImage pattern(int width, int height, int type) {
+		BufferedImage image = new BufferedImage(width, height, type);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int alpha = type == BufferedImage.TYPE_INT_ARGB ? 55 + (x * 7 + y * 3) % 200 : 255;
+				image.setRGB(x, y, alpha << 24 | ((x * 29) & 0xff) << 16 | ((y * 41) & 0xff) << 8 | ((x * y) & 0xff));
+			}
+		}
+		return image;
+	}
+
+	private static BufferedImage filled(int width, int height, int type, int argb) {
+		BufferedImage image = new BufferedImage(width, height, type);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				image.setRGB(x, y, argb);
+			}
+		}
+		return image;
+	}
+}